@@ -0,0 +1,103 @@
+package edu.course.gradebook;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Delivers {@link WatchAlert}s to a listener on a background thread.
+ *
+ * The gradebook only offers each alert to a bounded queue, so a slow listener
+ * never holds up a grade change. When the queue is full the alert is dropped
+ * and counted instead; {@link Gradebook#watchedStudents(String)} still has
+ * the current state. An exception thrown by the listener is counted and
+ * delivery carries on.
+ */
+public final class AlertDispatcher implements AutoCloseable {
+    private static final long POLL_MILLIS = 50;
+
+    private final BlockingQueue<WatchAlert> queue;
+    private final Consumer<WatchAlert> listener;
+    private final Thread deliverer;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean closing;
+
+    private AlertDispatcher(Consumer<WatchAlert> listener, int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.listener = listener;
+        deliverer = Thread.ofPlatform().name("gradebook-alerts").daemon().unstarted(this::deliverLoop);
+        deliverer.start();
+    }
+
+    /**
+     * Starts delivering alerts to a listener, holding at most capacity undelivered alerts.
+     *
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public static AlertDispatcher start(Consumer<WatchAlert> listener, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Alert queue capacity must be positive");
+        }
+        return new AlertDispatcher(listener, capacity);
+    }
+
+    /**
+     * Queues an alert without waiting, or drops it if the queue is full or the dispatcher is closed.
+     */
+    void offer(WatchAlert alert) {
+        if (closing || !queue.offer(alert)) {
+            dropped.incrementAndGet();
+        } else if (closing && queue.remove(alert)) {
+            // close() began while this was queued, and the delivery thread may already have stopped
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Number of alerts dropped because the queue was full or the dispatcher was closed.
+     */
+    public long droppedAlerts() {
+        return dropped.get();
+    }
+
+    /**
+     * Number of alerts whose listener call threw an exception.
+     */
+    public long failedAlerts() {
+        return failed.get();
+    }
+
+    /**
+     * Delivers everything still queued and stops the delivery thread.
+     */
+    @Override
+    public void close() {
+        closing = true;
+        try {
+            deliverer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deliverLoop() {
+        try {
+            while (!closing || !queue.isEmpty()) {
+                var alert = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (alert == null) {
+                    continue;
+                }
+                try {
+                    listener.accept(alert);
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package edu.course.gradebook;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A finished term, frozen by {@link Gradebook#archiveTerm(String)} and answering read-only queries.
+ *
+ * Archiving only hands over the live student map, so it is O(1). A background
+ * thread then compacts the term: every student is bit-packed (see
+ * {@link PackedGradeList}) and their curved average and letter grade are
+ * worked out once, since they can no longer change. Until it finishes,
+ * queries read the handed-over map directly; afterwards a query is a single
+ * lookup. Both forms are immutable, so any thread may query the term.
+ */
+public final class ArchivedTerm {
+
+    private record Student(StudentGrades grades, double average, String letter) {
+    }
+
+    /**
+     * Exactly one of live and frozen is set; swapped as a whole so a query sees one or the other.
+     */
+    private record Contents(Map<String, List<Integer>> live, Map<String, Student> frozen, double classAverage) {
+    }
+
+    private final String name;
+    private final GradingScheme gradingScheme;
+    private final GradeEvaluator evaluator;
+    private final double curveScale;
+    private final double curveOffset;
+    private final GradeSketch sketch;
+    private final int studentCount;
+    private final CountDownLatch compacted = new CountDownLatch(1);
+    private volatile Contents contents;
+
+    private ArchivedTerm(String name, Map<String, List<Integer>> students, GradingScheme gradingScheme,
+            GradeEvaluator evaluator, double curveScale, double curveOffset, GradeSketch sketch) {
+        this.name = name;
+        this.gradingScheme = gradingScheme;
+        this.evaluator = evaluator;
+        this.curveScale = curveScale;
+        this.curveOffset = curveOffset;
+        this.sketch = sketch;
+        this.studentCount = students.size();
+        this.contents = new Contents(students, null, Double.NaN);
+    }
+
+    /**
+     * Takes ownership of a gradebook's students, which nothing may change afterwards, and starts compacting them.
+     */
+    static ArchivedTerm freeze(String name, Map<String, List<Integer>> students, GradingScheme gradingScheme,
+            GradeEvaluator evaluator, double curveScale, double curveOffset, GradeSketch sketch) {
+        var term = new ArchivedTerm(name, students, gradingScheme, evaluator, curveScale, curveOffset, sketch);
+        Thread.ofPlatform().name("gradebook-archive-" + name).daemon().start(term::compact);
+        return term;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int studentCount() {
+        return studentCount;
+    }
+
+    public GradingScheme gradingScheme() {
+        return gradingScheme;
+    }
+
+    /**
+     * Returns a copy of the term's grade, average and distinct-student sketches.
+     */
+    public GradeSketch sketch() {
+        return sketch.copy();
+    }
+
+    public boolean isCompacted() {
+        return compacted.getCount() == 0;
+    }
+
+    /**
+     * Waits for background compaction to finish.
+     *
+     * @return false if it did not finish in time
+     */
+    public boolean awaitCompaction(Duration timeout) throws InterruptedException {
+        return compacted.await(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    public Optional<List<Integer>> findStudentGrades(String name) {
+        var student = find(name);
+        return student == null ? Optional.empty() : Optional.of(Collections.unmodifiableList(student.grades()));
+    }
+
+    public Optional<Double> averageFor(String name) {
+        var student = find(name);
+        return student == null || Double.isNaN(student.average()) ? Optional.empty() : Optional.of(student.average());
+    }
+
+    public Optional<String> letterGradeFor(String name) {
+        var student = find(name);
+        return student == null ? Optional.empty() : Optional.ofNullable(student.letter());
+    }
+
+    /**
+     * Fills a caller-supplied summary as {@link Gradebook#summarize(String, StudentSummary)} does.
+     *
+     * @return false, leaving the summary unchanged, if the term has no such student
+     */
+    public boolean summarize(String name, StudentSummary into) {
+        var student = find(name);
+        if (student == null) {
+            return false;
+        }
+        into.fill(name, student.grades(), student.average(), student.letter());
+        return true;
+    }
+
+    /**
+     * The curved average of every grade in the term, as {@link Gradebook#classAverage()} reported it.
+     */
+    public Optional<Double> classAverage() {
+        var current = contents;
+        var average = current.frozen() != null ? current.classAverage() : classAverage(current.live());
+        return Double.isNaN(average) ? Optional.empty() : Optional.of(average);
+    }
+
+    private Student find(String name) {
+        var current = contents;
+        if (current.frozen() != null) {
+            return current.frozen().get(name);
+        }
+        var grades = (StudentGrades) current.live().get(name);
+        return grades == null ? null : evaluate(grades, grades);
+    }
+
+    private Student evaluate(StudentGrades grades, StudentGrades stored) {
+        var average = evaluator.average(grades);
+        if (Double.isNaN(average)) {
+            return new Student(stored, Double.NaN, null);
+        }
+        var curved = curved(average);
+        return new Student(stored, curved, evaluator.letterFor(curved));
+    }
+
+    private double classAverage(Map<String, List<Integer>> students) {
+        long total = 0;
+        long count = 0;
+        for (var grades : students.values()) {
+            total += ((StudentGrades) grades).gradeSum();
+            count += grades.size();
+        }
+        return count == 0 ? Double.NaN : curved((double) total / count);
+    }
+
+    private double curved(double average) {
+        var result = average * curveScale + curveOffset;
+        return Math.max(GradeStats.MIN_GRADE, Math.min(GradeStats.MAX_GRADE, result));
+    }
+
+    /**
+     * Packs every student and works out their results, then drops the original lists.
+     */
+    private void compact() {
+        var live = contents.live();
+        var frozen = new HashMap<String, Student>(live.size() * 4 / 3 + 1);
+        for (var entry : live.entrySet()) {
+            var grades = (StudentGrades) entry.getValue();
+            var packed = grades.isPacked() ? grades : PackedGradeList.pack(grades);
+            frozen.put(entry.getKey(), evaluate(grades, packed));
+        }
+        contents = new Contents(null, frozen, classAverage(live));
+        compacted.countDown();
+    }
+}
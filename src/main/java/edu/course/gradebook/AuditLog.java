@@ -0,0 +1,229 @@
+package edu.course.gradebook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps every gradebook action permanently in numbered files on disk.
+ *
+ * {@link #append(String)} only timestamps the entry and puts it on a
+ * lock-free queue, so any number of threads can log without waiting on I/O.
+ * A single background thread wakes up every flush interval, writes everything
+ * queued since the last batch, and forces it to disk. Once a file has taken
+ * the configured number of bytes, the writer moves on to the next file
+ * ({@code audit-000001.log}, {@code audit-000002.log}, ..., gzip-compressed
+ * as {@code .log.gz} if asked). Existing files are never overwritten; a new
+ * audit log continues after the highest file number already in the directory.
+ *
+ * If a write fails the writer stops, and every later append throws rather
+ * than letting entries pile up in memory that will never reach disk.
+ *
+ * Each line is an ISO-8601 timestamp, a tab and the entry.
+ */
+public final class AuditLog implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private record Entry(long epochMillis, String message) {
+    }
+
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final Path directory;
+    private final long maxFileBytes;
+    private final long flushIntervalNanos;
+    private final boolean compress;
+    private final Thread writer;
+    private final byte[] batch = new byte[BUFFER_SIZE];
+    private final AtomicInteger appending = new AtomicInteger();
+    private volatile boolean closing;
+    private volatile IOException failure;
+    private int fileNumber;
+    private long fileBytes;
+    private FileChannel channel;
+    private OutputStream out;
+
+    private AuditLog(Path directory, long maxFileBytes, Duration flushInterval, boolean compress) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxFileBytes = maxFileBytes;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.compress = compress;
+        try (var files = Files.list(this.directory)) {
+            fileNumber = files.mapToInt(AuditLog::fileNumberOf).max().orElse(0);
+        }
+        writer = Thread.ofPlatform().name("gradebook-audit").daemon().unstarted(this::writeLoop);
+        writer.start();
+    }
+
+    /**
+     * Starts an audit log writing into a directory, creating it if needed.
+     *
+     * @param maxFileBytes bytes of entries per file before moving to the next one
+     * @param flushInterval how long entries may wait in memory before they are written
+     * @param compress whether to gzip each file
+     * @throws IllegalArgumentException if the size or interval is not positive
+     */
+    public static AuditLog open(Path directory, long maxFileBytes, Duration flushInterval, boolean compress)
+            throws IOException {
+        if (maxFileBytes <= 0 || flushInterval.isNegative() || flushInterval.isZero()) {
+            throw new IllegalArgumentException("File size and flush interval must be positive");
+        }
+        return new AuditLog(directory, maxFileBytes, flushInterval, compress);
+    }
+
+    /**
+     * Queues an entry; it reaches disk within one flush interval.
+     *
+     * @throws IllegalStateException if the log is closed, or writing an earlier batch failed
+     */
+    public void append(String message) {
+        appending.incrementAndGet();
+        try {
+            if (closing) {
+                throw new IllegalStateException("Audit log is closed");
+            }
+            if (failure != null) {
+                throw new IllegalStateException("Audit log stopped writing: " + failure.getMessage(), failure);
+            }
+            queue.offer(new Entry(System.currentTimeMillis(), message));
+        } finally {
+            appending.decrementAndGet();
+        }
+    }
+
+    /**
+     * Writes out everything still queued, closes the current file and stops the writer thread.
+     *
+     * @throws IOException if writing any batch failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closing) {
+            closing = true;
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Appends that got past the closing check before it was set finish before the last batch
+            while (appending.get() != 0) {
+                Thread.onSpinWait();
+            }
+            try {
+                if (failure == null) {
+                    writeBatch();
+                }
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                try {
+                    closeFile();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes a batch every flush interval until closed or a write fails; close() writes the last batch.
+     */
+    private void writeLoop() {
+        try {
+            while (!closing) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+                writeBatch();
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        if (queue.isEmpty()) {
+            return;
+        }
+        int length = 0;
+        for (var entry = queue.poll(); entry != null; entry = queue.poll()) {
+            var line = (Instant.ofEpochMilli(entry.epochMillis()) + "\t" + entry.message() + "\n")
+                    .getBytes(StandardCharsets.UTF_8);
+            if (out == null || fileBytes >= maxFileBytes) {
+                write(length);
+                length = 0;
+                nextFile();
+            }
+            if (length + line.length > batch.length) {
+                write(length);
+                length = 0;
+            }
+            if (line.length > batch.length) {
+                out.write(line);
+            } else {
+                System.arraycopy(line, 0, batch, length, line.length);
+                length += line.length;
+            }
+            fileBytes += line.length;
+        }
+        write(length);
+        out.flush();
+        channel.force(false);
+    }
+
+    private void write(int length) throws IOException {
+        if (length > 0) {
+            out.write(batch, 0, length);
+        }
+    }
+
+    private void nextFile() throws IOException {
+        closeFile();
+        fileNumber++;
+        var name = String.format("audit-%06d.log%s", fileNumber, compress ? ".gz" : "");
+        channel = FileChannel.open(directory.resolve(name), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+        var stream = Channels.newOutputStream(channel);
+        out = compress ? new GZIPOutputStream(stream, BUFFER_SIZE, true) : stream;
+        fileBytes = 0;
+    }
+
+    private void closeFile() throws IOException {
+        if (out != null) {
+            if (out instanceof GZIPOutputStream gzip) {
+                gzip.finish();
+            }
+            out.flush();
+            channel.force(false);
+            out.close();
+            out = null;
+            channel = null;
+        }
+    }
+
+    private static int fileNumberOf(Path file) {
+        var name = file.getFileName().toString();
+        if (!name.startsWith("audit-") || !(name.endsWith(".log") || name.endsWith(".log.gz"))) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(name.substring("audit-".length(), name.indexOf('.')));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package edu.course.gradebook;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary encoding of the command set for machine clients.
+ *
+ * Every request and response is a frame: a varint payload length followed
+ * by the payload. A request payload starts with an opcode byte:
+ *
+ * - ADD_STUDENT, LOOKUP: varint name length, UTF-8 name
+ * - ADD_GRADE: varint student id, grade byte
+ * - REMOVE_STUDENT, REPORT: varint student id
+ * - CLASS_REPORT, UNDO: nothing else
+ *
+ * ADD_STUDENT, ADD_GRADE and REMOVE_STUDENT may end with an 8-byte request
+ * id. A retry with the same id gets the first attempt's status and changes
+ * nothing (see {@link Gradebook#addStudent(String, long)}).
+ *
+ * A response payload starts with a status byte. ADD_STUDENT and LOOKUP
+ * answer with the student's varint id, REPORT with the average as an 8-byte
+ * double (NaN when there are no grades) and the letter as a varint length
+ * and UTF-8 bytes, CLASS_REPORT with the class average as a double.
+ *
+ * Student ids are handed out per connection the first time a name is added
+ * or looked up, so once a client knows an id, grades flow without any name
+ * being decoded or any String being built for the request. REPORT is a pure
+ * read, like the text REPORT: it writes nothing to the activity log. Varints
+ * are unsigned LEB128.
+ */
+public final class BinaryProtocol {
+    public static final byte ADD_STUDENT = 1;
+    public static final byte ADD_GRADE = 2;
+    public static final byte REMOVE_STUDENT = 3;
+    public static final byte REPORT = 4;
+    public static final byte CLASS_REPORT = 5;
+    public static final byte UNDO = 6;
+    public static final byte LOOKUP = 7;
+
+    public static final byte OK = 0;
+    public static final byte FAILED = 1;
+    public static final byte UNKNOWN_STUDENT = 2;
+    public static final byte BAD_REQUEST = 3;
+
+    static final int BUFFER_SIZE = 1 << 16;
+    static final int MAX_FRAME = 1 << 12;
+
+    private final Gradebook gradebook;
+    private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+    private final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+    private final Map<String, Integer> idsByName = new HashMap<>();
+    private final List<String> namesById = new ArrayList<>();
+    private final Map<String, byte[]> letterBytes = new HashMap<>();
+    private final StudentSummary summary = new StudentSummary();
+    private long requestId;
+
+    public BinaryProtocol(Gradebook gradebook) {
+        this.gradebook = gradebook;
+    }
+
+    /**
+     * Answers request frames from the input channel until it reaches end of stream.
+     * Responses are batched and flushed whenever no complete request is buffered.
+     *
+     * @throws IOException if a frame is longer than the protocol allows or the stream ends mid-frame
+     */
+    public void serve(ReadableByteChannel requests, WritableByteChannel responses) throws IOException {
+        in.clear();
+        out.clear();
+        while (requests.read(in) >= 0) {
+            in.flip();
+            while (true) {
+                int start = in.position();
+                int length = readFrameLength(in);
+                if (length < 0 || in.remaining() < length) {
+                    in.position(start);
+                    break;
+                }
+                int end = in.position() + length;
+                if (out.remaining() < MAX_FRAME) {
+                    flush(responses);
+                }
+                handle(end);
+                in.position(end);
+            }
+            in.compact();
+            flush(responses);
+        }
+        if (in.position() > 0) {
+            throw new EOFException("Stream ended in the middle of a frame");
+        }
+    }
+
+    private void handle(int end) {
+        int lengthAt = out.position();
+        out.position(lengthAt + 2);
+        int payloadAt = out.position();
+        try {
+            dispatch(in.get(), end);
+        } catch (RuntimeException e) {
+            out.position(payloadAt);
+            out.put(BAD_REQUEST);
+        }
+        int length = out.position() - payloadAt;
+        // Response payloads are short, so the length is always written as a two-byte varint
+        out.put(lengthAt, (byte) (length & 0x7F | 0x80));
+        out.put(lengthAt + 1, (byte) (length >>> 7));
+    }
+
+    private void dispatch(byte opcode, int end) {
+        switch (opcode) {
+            case ADD_STUDENT -> {
+                var name = readName(end);
+                var added = readRequestId(end) ? gradebook.addStudent(name, requestId) : gradebook.addStudent(name);
+                out.put(added ? OK : FAILED);
+                writeVarint(out, idFor(name));
+            }
+            case LOOKUP -> {
+                var name = readName(end);
+                expectEnd(end);
+                if (gradebook.findStudentGrades(name).isEmpty()) {
+                    out.put(UNKNOWN_STUDENT);
+                } else {
+                    out.put(OK);
+                    writeVarint(out, idFor(name));
+                }
+            }
+            case ADD_GRADE -> {
+                var name = readStudent();
+                int grade = in.get();
+                var keyed = readRequestId(end);
+                if (name == null) {
+                    out.put(UNKNOWN_STUDENT);
+                } else if (grade < GradeStats.MIN_GRADE || grade > GradeStats.MAX_GRADE) {
+                    out.put(BAD_REQUEST);
+                } else if (keyed) {
+                    out.put(gradebook.addGrade(name, GradingScheme.DEFAULT_CATEGORY, grade, requestId) ? OK : UNKNOWN_STUDENT);
+                } else {
+                    out.put(gradebook.addGrade(name, grade) ? OK : UNKNOWN_STUDENT);
+                }
+            }
+            case REMOVE_STUDENT -> {
+                var name = readStudent();
+                var keyed = readRequestId(end);
+                var removed = name != null && (keyed ? gradebook.removeStudent(name, requestId) : gradebook.removeStudent(name));
+                out.put(removed ? OK : UNKNOWN_STUDENT);
+            }
+            case REPORT -> {
+                var name = readStudent();
+                expectEnd(end);
+                if (name == null || !gradebook.summarize(name, summary)) {
+                    out.put(UNKNOWN_STUDENT);
+                    return;
+                }
+                out.put(OK);
+                out.putDouble(summary.average());
+                var letter = summary.hasAverage() ? summary.letterGrade() : "";
+                // Letters come from the grading scheme, so each one is encoded only once
+                var bytes = letterBytes.computeIfAbsent(letter, l -> l.getBytes(StandardCharsets.UTF_8));
+                writeVarint(out, bytes.length);
+                out.put(bytes);
+            }
+            case CLASS_REPORT -> {
+                expectEnd(end);
+                out.put(OK);
+                out.putDouble(gradebook.classAverage().orElse(Double.NaN));
+            }
+            case UNDO -> {
+                expectEnd(end);
+                out.put(gradebook.undo() ? OK : FAILED);
+            }
+            default -> out.put(BAD_REQUEST);
+        }
+    }
+
+    private void expectEnd(int end) {
+        if (in.position() != end) {
+            throw new IllegalArgumentException("Frame length does not match its opcode");
+        }
+    }
+
+    /**
+     * Reads the request id that may end a mutation into {@link #requestId}.
+     *
+     * @return false if the frame ends without one
+     */
+    private boolean readRequestId(int end) {
+        if (end - in.position() == Long.BYTES) {
+            requestId = in.getLong();
+            return true;
+        }
+        expectEnd(end);
+        return false;
+    }
+
+    private String readName(int end) {
+        int length = readVarint(in);
+        if (length > end - in.position()) {
+            throw new IllegalArgumentException("Name runs past the end of the frame");
+        }
+        var name = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return name;
+    }
+
+    private String readStudent() {
+        int id = readVarint(in);
+        return id < namesById.size() ? namesById.get(id) : null;
+    }
+
+    private int idFor(String name) {
+        var id = idsByName.get(name);
+        if (id == null) {
+            id = namesById.size();
+            namesById.add(name);
+            idsByName.put(name, id);
+        }
+        return id;
+    }
+
+    private void flush(WritableByteChannel responses) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            responses.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Reads a frame length, or returns -1 if the buffer does not hold the whole varint yet.
+     */
+    private static int readFrameLength(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; buffer.hasRemaining(); shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value > MAX_FRAME) {
+                    throw new IOException("Frame of " + value + " bytes is larger than " + MAX_FRAME);
+                }
+                return value;
+            }
+            if (shift > 21) {
+                throw new IOException("Malformed frame length");
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint.
+     *
+     * @throws IllegalArgumentException if the varint is longer than five bytes
+     */
+    public static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    public static void writeVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Encodes an ADD_STUDENT (or LOOKUP) request frame for a client.
+     */
+    public static void encodeName(ByteBuffer buffer, byte opcode, String name) {
+        var bytes = name.getBytes(StandardCharsets.UTF_8);
+        writeVarint(buffer, 1 + varintSize(bytes.length) + bytes.length);
+        buffer.put(opcode);
+        writeVarint(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Encodes an ADD_GRADE request frame for a client.
+     */
+    public static void encodeAddGrade(ByteBuffer buffer, int studentId, int grade) {
+        writeVarint(buffer, 2 + varintSize(studentId));
+        buffer.put(ADD_GRADE);
+        writeVarint(buffer, studentId);
+        buffer.put((byte) grade);
+    }
+
+    /**
+     * Encodes an ADD_GRADE request frame carrying a request id, so a resent
+     * frame is applied only once.
+     */
+    public static void encodeAddGrade(ByteBuffer buffer, int studentId, int grade, long requestId) {
+        writeVarint(buffer, 2 + varintSize(studentId) + Long.BYTES);
+        buffer.put(ADD_GRADE);
+        writeVarint(buffer, studentId);
+        buffer.put((byte) grade);
+        buffer.putLong(requestId);
+    }
+
+    /**
+     * Encodes a REMOVE_STUDENT or REPORT request frame for a client.
+     */
+    public static void encodeStudent(ByteBuffer buffer, byte opcode, int studentId) {
+        writeVarint(buffer, 1 + varintSize(studentId));
+        buffer.put(opcode);
+        writeVarint(buffer, studentId);
+    }
+
+    /**
+     * Encodes a CLASS_REPORT or UNDO request frame for a client.
+     */
+    public static void encodeSimple(ByteBuffer buffer, byte opcode) {
+        writeVarint(buffer, 1);
+        buffer.put(opcode);
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,17 @@
+package edu.course.gradebook;
+
+/**
+ * How much heap the packed form of idle students is saving.
+ *
+ * Byte counts are estimates of object sizes on a 64-bit JVM with compressed references.
+ *
+ * @param packedStudents students currently stored packed
+ * @param unpackedBytes estimated size of those students as mutable lists
+ * @param packedBytes estimated size of their packed form
+ */
+public record ColdStorageReport(int packedStudents, long unpackedBytes, long packedBytes) {
+
+    public long savedBytes() {
+        return unpackedBytes - packedBytes;
+    }
+}
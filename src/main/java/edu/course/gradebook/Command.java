@@ -16,6 +16,21 @@ public enum Command {
     CLASS_REPORT,     // Display the class average across all students
     UNDO,             // Undo the last state-changing operation
     LOG,              // Display the activity log
+    SCHEME,           // Show or replace the grading scheme
+    IMPORT,           // Load grades from a CSV or TSV file
+    EXPORT,           // Save all grades to a CSV or TSV file
+    CURVE,            // Curve every student's average
+    STATS,            // Display grade statistics for the class or one student
+    COMPACT,          // Pack idle students and report the memory saved
+    BEGIN,            // Start buffering changes into a transaction
+    COMMIT,           // Apply the open transaction's changes all at once
+    ROLLBACK,         // Discard the open transaction's changes
+    REPORT_ALL,       // Report every student to the screen or a file
+    TREND,            // Show a student's recent average and trend
+    WATCH,            // Manage watches and list the students matching one
+    ARCHIVE_TERM,     // Freeze the current term and start an empty one
+    TERM_REPORT,      // Report on an archived term or one of its students
+    MEMORY,           // Show estimated memory use and the memory budget
     EXIT,             // Exit the program
     UNKNOWN           // Represents an invalid or unrecognized command
 }
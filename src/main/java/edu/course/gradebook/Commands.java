@@ -43,6 +43,21 @@ public final class Commands {
             case "CLASS_REPORT" -> Command.CLASS_REPORT;
             case "UNDO" -> Command.UNDO;
             case "LOG" -> Command.LOG;
+            case "SCHEME" -> Command.SCHEME;
+            case "IMPORT" -> Command.IMPORT;
+            case "EXPORT" -> Command.EXPORT;
+            case "CURVE" -> Command.CURVE;
+            case "STATS" -> Command.STATS;
+            case "COMPACT" -> Command.COMPACT;
+            case "BEGIN" -> Command.BEGIN;
+            case "COMMIT" -> Command.COMMIT;
+            case "ROLLBACK" -> Command.ROLLBACK;
+            case "REPORT_ALL" -> Command.REPORT_ALL;
+            case "TREND" -> Command.TREND;
+            case "WATCH" -> Command.WATCH;
+            case "ARCHIVE_TERM" -> Command.ARCHIVE_TERM;
+            case "TERM_REPORT" -> Command.TERM_REPORT;
+            case "MEMORY" -> Command.MEMORY;
             case "EXIT" -> Command.EXIT;
             default -> Command.UNKNOWN;
         };
@@ -0,0 +1,160 @@
+package edu.course.gradebook;
+
+import java.time.Duration;
+
+/**
+ * Remembers the result of recently applied requests by their 64-bit request
+ * id, so that a retried request can be answered without applying it again.
+ *
+ * Ids live in a preallocated open-addressing table with linear probing, so a
+ * lookup is a hash, a probe or two and a clock read, and nothing is allocated
+ * per request. A ring buffer records ids in arrival order; each new id first
+ * evicts ids older than the time-to-live, and once the ring is full it evicts
+ * the oldest id, so the cache never holds more than its capacity. Not
+ * thread-safe.
+ */
+final class DedupeCache {
+    static final int NOT_SEEN = -1;
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final int mask;
+    private final long[] keys;
+    private final long[] deadlines;
+    private final int[] results;
+    private final boolean[] occupied;
+    private final long[] ringKeys;
+    private final long[] ringDeadlines;
+    private int ringHead;
+    private int ringSize;
+    private long hits;
+
+    /**
+     * @throws IllegalArgumentException if capacity or ttl is not positive
+     */
+    DedupeCache(int capacity, Duration ttl) {
+        if (capacity <= 0 || capacity > 1 << 28 || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Dedupe capacity and time-to-live must be positive");
+        }
+        this.capacity = capacity;
+        this.ttlNanos = ttl.toNanos();
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        mask = tableSize - 1;
+        keys = new long[tableSize];
+        deadlines = new long[tableSize];
+        results = new int[tableSize];
+        occupied = new boolean[tableSize];
+        ringKeys = new long[capacity];
+        ringDeadlines = new long[capacity];
+    }
+
+    /**
+     * Heap held by the preallocated arrays, which never grows or shrinks.
+     */
+    long estimatedBytes() {
+        long table = (mask + 1L) * (Long.BYTES + Long.BYTES + Integer.BYTES + 1);
+        long ring = (long) capacity * (Long.BYTES + Long.BYTES);
+        return 16 + 6 * 16 + table + ring;
+    }
+
+    /**
+     * Returns the recorded result for an id that has not expired, or {@link #NOT_SEEN}.
+     */
+    int lookup(long id) {
+        int slot = find(id);
+        if (slot < 0 || deadlines[slot] - System.nanoTime() < 0) {
+            return NOT_SEEN;
+        }
+        hits++;
+        return results[slot];
+    }
+
+    /**
+     * Records the result of a request applied under an id.
+     */
+    void record(long id, int result) {
+        long now = System.nanoTime();
+        while (ringSize > 0 && (ringSize == capacity || ringDeadlines[ringHead] - now < 0)) {
+            evictOldest();
+        }
+        long deadline = now + ttlNanos;
+        int slot = find(id);
+        if (slot < 0) {
+            slot = (int) mix(id) & mask;
+            while (occupied[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            occupied[slot] = true;
+            keys[slot] = id;
+        }
+        deadlines[slot] = deadline;
+        results[slot] = result;
+        int tail = (ringHead + ringSize) % capacity;
+        ringKeys[tail] = id;
+        ringDeadlines[tail] = deadline;
+        ringSize++;
+    }
+
+    /**
+     * Number of lookups answered from the cache.
+     */
+    long hits() {
+        return hits;
+    }
+
+    private int find(long id) {
+        int slot = (int) mix(id) & mask;
+        while (occupied[slot]) {
+            if (keys[slot] == id) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Drops the oldest ring entry, and its table entry unless the id was recorded again since.
+     */
+    private void evictOldest() {
+        long id = ringKeys[ringHead];
+        long deadline = ringDeadlines[ringHead];
+        ringHead = (ringHead + 1) % capacity;
+        ringSize--;
+        int slot = find(id);
+        if (slot >= 0 && deadlines[slot] == deadline) {
+            delete(slot);
+        }
+    }
+
+    /**
+     * Backward-shift deletion, which keeps every remaining id reachable without tombstones.
+     */
+    private void delete(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (occupied[next]) {
+            int home = (int) mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                deadlines[hole] = deadlines[next];
+                results[hole] = results[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        occupied[hole] = false;
+    }
+
+    /**
+     * The 64-bit finalizer from MurmurHash3, so sequential ids spread over the table.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,293 @@
+package edu.course.gradebook;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streams grade rows to and from CSV or TSV through NIO channels.
+ *
+ * Each row is {@code name,grade,category}. The grade and category may be
+ * left out: a row with only a name adds a student with no grades, and a
+ * missing category means {@link GradingScheme#DEFAULT_CATEGORY}. Fields that
+ * contain the delimiter, a quote or a line break are double-quoted, with
+ * quotes inside doubled. A first line whose grade field reads "grade" is
+ * treated as a header.
+ *
+ * One fixed-size byte buffer is reused for every read and write, so memory
+ * use does not depend on the size of the file. Recently seen student names
+ * and the last category are kept in small caches, so repeated names are not
+ * decoded into a new String on every row.
+ */
+final class GradeCsv {
+    static final int BUFFER_SIZE = 1 << 16;
+    static final String HEADER_GRADE = "grade";
+    private static final int NO_GRADE = -1;
+
+    /**
+     * Receives one parsed row; grade is -1 when the row has no grade.
+     */
+    @FunctionalInterface
+    interface RowHandler {
+        void row(String name, int grade, String category);
+    }
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private byte[] field = new byte[64];
+    private int fieldLength;
+    private static final int NAME_CACHE_SIZE = 4096;
+    private final byte[][] cachedNameBytes = new byte[NAME_CACHE_SIZE][];
+    private final String[] cachedNames = new String[NAME_CACHE_SIZE];
+    private byte[] lastCategory = new byte[0];
+    private String lastCategoryString;
+
+    /**
+     * Returns the delimiter for a file name: tab for .tsv files, comma otherwise.
+     */
+    static char delimiterFor(String fileName) {
+        return fileName.toLowerCase().endsWith(".tsv") ? '\t' : ',';
+    }
+
+    /**
+     * Parses every row from the channel and hands it to the handler.
+     *
+     * @return the number of rows handled, not counting a header
+     * @throws IllegalArgumentException if a row is malformed; the message names the line
+     */
+    long read(ReadableByteChannel in, char delimiter, RowHandler handler) throws IOException {
+        var bytes = buffer.array();
+        long line = 1;
+        long rows = 0;
+        int fieldIndex = 0;
+        boolean inQuotes = false;
+        boolean quoteClosed = false;
+        String name = null;
+        int grade = NO_GRADE;
+        String category = GradingScheme.DEFAULT_CATEGORY;
+        fieldLength = 0;
+
+        while (true) {
+            buffer.clear();
+            int read = in.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = bytes[i];
+                if (inQuotes) {
+                    if (b == '"') {
+                        inQuotes = false;
+                        quoteClosed = true;
+                    } else {
+                        append(b);
+                    }
+                    continue;
+                }
+                if (b == '"') {
+                    if (quoteClosed) {
+                        append(b);
+                        inQuotes = true;
+                    } else if (fieldLength == 0) {
+                        inQuotes = true;
+                    } else {
+                        append(b);
+                    }
+                    quoteClosed = false;
+                    continue;
+                }
+                quoteClosed = false;
+                if (b == delimiter || b == '\n') {
+                    switch (fieldIndex) {
+                        case 0 -> name = nameField();
+                        case 1 -> grade = gradeField(line);
+                        case 2 -> category = categoryField();
+                        default -> throw new IllegalArgumentException("Line " + line + ": too many fields");
+                    }
+                    fieldIndex++;
+                    fieldLength = 0;
+                    if (b == '\n') {
+                        if (finishRow(name, grade, category, fieldIndex, line, handler)) {
+                            rows++;
+                        }
+                        line++;
+                        fieldIndex = 0;
+                        name = null;
+                        grade = NO_GRADE;
+                        category = GradingScheme.DEFAULT_CATEGORY;
+                    }
+                } else if (b != '\r') {
+                    append(b);
+                }
+            }
+        }
+        if (inQuotes) {
+            throw new IllegalArgumentException("Line " + line + ": unterminated quote");
+        }
+        if (fieldIndex > 0 || fieldLength > 0) {
+            switch (fieldIndex) {
+                case 0 -> name = nameField();
+                case 1 -> grade = gradeField(line);
+                case 2 -> category = categoryField();
+                default -> throw new IllegalArgumentException("Line " + line + ": too many fields");
+            }
+            if (finishRow(name, grade, category, fieldIndex + 1, line, handler)) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private boolean finishRow(String name, int grade, String category, int fields, long line, RowHandler handler) {
+        if (fields == 1 && name.isEmpty()) {
+            return false;
+        }
+        if (grade == Integer.MIN_VALUE) {
+            return false;
+        }
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("Line " + line + ": missing student name");
+        }
+        handler.row(name, grade, category);
+        return true;
+    }
+
+    private void append(byte b) {
+        if (fieldLength == field.length) {
+            field = Arrays.copyOf(field, fieldLength * 2);
+        }
+        field[fieldLength++] = b;
+    }
+
+    private String nameField() {
+        int hash = 0;
+        for (int i = 0; i < fieldLength; i++) {
+            hash = 31 * hash + field[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (NAME_CACHE_SIZE - 1);
+        var cached = cachedNameBytes[slot];
+        if (cached == null || !Arrays.equals(field, 0, fieldLength, cached, 0, cached.length)) {
+            cached = Arrays.copyOf(field, fieldLength);
+            cachedNameBytes[slot] = cached;
+            cachedNames[slot] = new String(cached, StandardCharsets.UTF_8);
+        }
+        return cachedNames[slot];
+    }
+
+    private String categoryField() {
+        if (fieldLength == 0) {
+            return GradingScheme.DEFAULT_CATEGORY;
+        }
+        if (!Arrays.equals(field, 0, fieldLength, lastCategory, 0, lastCategory.length)) {
+            lastCategory = Arrays.copyOf(field, fieldLength);
+            lastCategoryString = new String(lastCategory, StandardCharsets.UTF_8);
+        }
+        return lastCategoryString;
+    }
+
+    /**
+     * Parses the grade digits in place; returns Integer.MIN_VALUE for a header line.
+     */
+    private int gradeField(long line) {
+        if (fieldLength == 0) {
+            return NO_GRADE;
+        }
+        int value = 0;
+        for (int i = 0; i < fieldLength; i++) {
+            int digit = field[i] - '0';
+            if (digit < 0 || digit > 9 || value > GradeStats.MAX_GRADE) {
+                if (line == 1 && new String(field, 0, fieldLength, StandardCharsets.UTF_8).trim().equalsIgnoreCase(HEADER_GRADE)) {
+                    return Integer.MIN_VALUE;
+                }
+                throw new IllegalArgumentException("Line " + line + ": invalid grade "
+                        + new String(field, 0, fieldLength, StandardCharsets.UTF_8));
+            }
+            value = value * 10 + digit;
+        }
+        if (value > GradeStats.MAX_GRADE) {
+            throw new IllegalArgumentException("Line " + line + ": grade must be between 0 and 100");
+        }
+        return value;
+    }
+
+    /**
+     * Starts writing rows; call {@link #flush(WritableByteChannel)} when done.
+     */
+    void beginWrite(WritableByteChannel out, char delimiter) throws IOException {
+        buffer.clear();
+        writeField(out, "student", delimiter);
+        writeByte(out, (byte) delimiter);
+        writeField(out, HEADER_GRADE, delimiter);
+        writeByte(out, (byte) delimiter);
+        writeField(out, "category", delimiter);
+        writeByte(out, (byte) '\n');
+    }
+
+    /**
+     * Writes one row; a negative grade writes a name-only row.
+     */
+    void writeRow(WritableByteChannel out, byte[] name, int grade, byte[] category, char delimiter) throws IOException {
+        writeBytes(out, name);
+        if (grade >= 0) {
+            writeByte(out, (byte) delimiter);
+            if (grade >= 100) {
+                writeByte(out, (byte) ('0' + grade / 100));
+            }
+            if (grade >= 10) {
+                writeByte(out, (byte) ('0' + grade / 10 % 10));
+            }
+            writeByte(out, (byte) ('0' + grade % 10));
+            writeByte(out, (byte) delimiter);
+            writeBytes(out, category);
+        }
+        writeByte(out, (byte) '\n');
+    }
+
+    /**
+     * Encodes a name or category once, quoting it if needed, for repeated {@link #writeRow} calls.
+     */
+    static byte[] encodeField(String value, char delimiter) {
+        boolean quote = value.indexOf(delimiter) >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        var text = quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    void flush(WritableByteChannel out) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            if (out.write(buffer) < 0) {
+                throw new EOFException("Channel closed while writing");
+            }
+        }
+        buffer.clear();
+    }
+
+    private void writeField(WritableByteChannel out, String value, char delimiter) throws IOException {
+        writeBytes(out, encodeField(value, delimiter));
+    }
+
+    private void writeBytes(WritableByteChannel out, byte[] bytes) throws IOException {
+        if (buffer.remaining() < bytes.length) {
+            flush(out);
+        }
+        if (bytes.length > buffer.capacity()) {
+            var large = ByteBuffer.wrap(bytes);
+            while (large.hasRemaining()) {
+                out.write(large);
+            }
+            return;
+        }
+        buffer.put(bytes);
+    }
+
+    private void writeByte(WritableByteChannel out, byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush(out);
+        }
+        buffer.put(b);
+    }
+}
@@ -0,0 +1,30 @@
+package edu.course.gradebook;
+
+/**
+ * Summary statistics over a set of raw (uncurved) grades.
+ *
+ * @param count number of grades
+ * @param mean average grade
+ * @param variance population variance
+ * @param min lowest grade
+ * @param max highest grade
+ */
+public record GradeDistribution(long count, double mean, double variance, int min, int max) {
+
+    public double standardDeviation() {
+        return Math.sqrt(variance);
+    }
+
+    /**
+     * Combines the statistics of two disjoint sets of grades, as if computed over both at once.
+     */
+    public GradeDistribution merge(GradeDistribution other) {
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        double combinedMean = mean + delta * other.count / total;
+        double squares = variance * count + other.variance * other.count
+                + delta * delta * ((double) count * other.count / total);
+        return new GradeDistribution(total, combinedMean, squares / total,
+                Math.min(min, other.min), Math.max(max, other.max));
+    }
+}
@@ -0,0 +1,86 @@
+package edu.course.gradebook;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * A {@link GradingScheme} compiled against a gradebook's category numbering.
+ *
+ * Compiling resolves category names to indexes once, so evaluating a student
+ * only reads the per-category aggregates kept in their {@link StudentGrades}
+ * and allocates nothing. Categories without drops need only a count and a
+ * sum, which even packed students keep. Swapping in a new scheme only means compiling a new
+ * evaluator; no student's grades are rescanned.
+ */
+final class GradeEvaluator {
+    private final int[] categories;
+    private final double[] weights;
+    private final int[] dropsLowest;
+    private final int[] dropsHighest;
+    private final double[] minimums;
+    private final String[] letters;
+
+    private GradeEvaluator(GradingScheme scheme, ToIntFunction<String> categoryIndex) {
+        int size = scheme.categories().size();
+        categories = new int[size];
+        weights = new double[size];
+        dropsLowest = new int[size];
+        dropsHighest = new int[size];
+        for (int i = 0; i < size; i++) {
+            var category = scheme.categories().get(i);
+            categories[i] = categoryIndex.applyAsInt(category.name());
+            weights[i] = category.weight();
+            dropsLowest[i] = category.dropLowest();
+            dropsHighest[i] = category.dropHighest();
+        }
+        int cutoffs = scheme.cutoffs().size();
+        minimums = new double[cutoffs];
+        letters = new String[cutoffs];
+        for (int i = 0; i < cutoffs; i++) {
+            minimums[i] = scheme.cutoffs().get(i).minimum();
+            letters[i] = scheme.cutoffs().get(i).letter();
+        }
+    }
+
+    static GradeEvaluator compile(GradingScheme scheme, ToIntFunction<String> categoryIndex) {
+        return new GradeEvaluator(scheme, categoryIndex);
+    }
+
+    /**
+     * Returns the student's average under this scheme, or NaN if no grade counts towards it.
+     */
+    double average(StudentGrades grades) {
+        if (categories.length == 0) {
+            return grades.isEmpty() ? Double.NaN : (double) grades.gradeSum() / grades.size();
+        }
+        double weighted = 0.0;
+        double totalWeight = 0.0;
+        for (int i = 0; i < categories.length; i++) {
+            double average;
+            if (dropsLowest[i] == 0 && dropsHighest[i] == 0) {
+                int count = grades.categoryCount(categories[i]);
+                if (count == 0) {
+                    continue;
+                }
+                average = (double) grades.categorySum(categories[i]) / count;
+            } else {
+                var stats = grades.category(categories[i]);
+                average = stats == null ? Double.NaN : stats.averageDropping(dropsLowest[i], dropsHighest[i]);
+                if (Double.isNaN(average)) {
+                    continue;
+                }
+            }
+            weighted += weights[i] * average;
+            totalWeight += weights[i];
+        }
+        return totalWeight == 0.0 ? Double.NaN : weighted / totalWeight;
+    }
+
+    String letterFor(double average) {
+        for (int i = 0; i < minimums.length - 1; i++) {
+            if (average >= minimums[i]) {
+                return letters[i];
+            }
+        }
+        return letters[letters.length - 1];
+    }
+}
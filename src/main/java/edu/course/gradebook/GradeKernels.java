@@ -0,0 +1,42 @@
+package edu.course.gradebook;
+
+import java.nio.IntBuffer;
+
+/**
+ * Inner loops over grade counting arrays (index = grade, value = how many times it was recorded).
+ *
+ * {@link #create()} picks the Vector API implementation when the
+ * jdk.incubator.vector module is available (run with
+ * {@code --add-modules jdk.incubator.vector}) and the scalar one otherwise,
+ * or when the {@code gradebook.kernels} system property is "scalar".
+ */
+interface GradeKernels {
+    String PROPERTY = "gradebook.kernels";
+    int HISTOGRAM_LENGTH = GradeStats.MAX_GRADE + 1;
+
+    static GradeKernels create() {
+        var vectorAvailable = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+        if (vectorAvailable && !"scalar".equalsIgnoreCase(System.getProperty(PROPERTY))) {
+            try {
+                // Loaded reflectively so the class is never linked when the module is absent
+                return (GradeKernels) Class.forName("edu.course.gradebook.VectorGradeKernels")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return new ScalarGradeKernels();
+            }
+        }
+        return new ScalarGradeKernels();
+    }
+
+    String name();
+
+    /**
+     * Adds the first {@link #HISTOGRAM_LENGTH} counts of histogram into total.
+     */
+    void accumulate(int[] total, IntBuffer histogram);
+
+    /**
+     * Writes the number of grades, their sum and their sum of squares into result[0..2].
+     */
+    void moments(int[] histogram, double[] result);
+}
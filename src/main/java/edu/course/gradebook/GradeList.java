@@ -0,0 +1,142 @@
+package edu.course.gradebook;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A student's grades in the order they were recorded, together with the
+ * category each grade belongs to and running per-category aggregates.
+ *
+ * The list view is read-only: grades only change through
+ * {@link #append(int, int)} and {@link #dropLast()}, so the aggregates are
+ * always in step with the list. Reading a grade back never allocates because
+ * every grade is in the Integer cache.
+ */
+final class GradeList extends AbstractList<Integer> implements StudentGrades {
+    private static final int INITIAL_CAPACITY = 10;
+
+    private final GradeStats overall = new GradeStats();
+    private GradeWindow window;
+    private GradeStats[] byCategory = new GradeStats[1];
+    private int[] grades = new int[INITIAL_CAPACITY];
+    private byte[] categories = new byte[INITIAL_CAPACITY];
+    private int size;
+    private long lastModified = System.nanoTime();
+    private long version;
+
+    GradeList(int windowLength) {
+        window = new GradeWindow(windowLength);
+    }
+
+    @Override
+    public Integer get(int index) {
+        Objects.checkIndex(index, size);
+        return grades[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void append(int grade, int category) {
+        var stats = statsFor(category);
+        stats.add(grade);
+        overall.add(grade);
+        window.append(grade);
+        lastModified = System.nanoTime();
+        if (size == grades.length) {
+            grades = Arrays.copyOf(grades, size * 2);
+            categories = Arrays.copyOf(categories, size * 2);
+        }
+        grades[size] = grade;
+        categories[size] = (byte) category;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public int dropLast() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        int index = size - 1;
+        int grade = grades[index];
+        byCategory[categories[index]].remove(grade);
+        overall.remove(grade);
+        window.dropLast(grade, window.reentering(this, size));
+        lastModified = System.nanoTime();
+        size--;
+        modCount++;
+        return grade;
+    }
+
+    @Override
+    public int categoryAt(int index) {
+        return categories[index];
+    }
+
+    @Override
+    public GradeStats overall() {
+        return overall;
+    }
+
+    @Override
+    public GradeStats category(int category) {
+        return category < byCategory.length ? byCategory[category] : null;
+    }
+
+    @Override
+    public GradeWindow window() {
+        return window;
+    }
+
+    @Override
+    public void resizeWindow(int length) {
+        window = GradeWindow.of(this, length);
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @Override
+    public long lastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        long bytes = 48 + 16 + 4L * size + 16 + categories.length + 16 + 4L * byCategory.length;
+        return bytes + window.estimatedBytes() + GradeStats.HEAP_BYTES * (1 + statsCount());
+    }
+
+    private int statsCount() {
+        int count = 0;
+        for (var stats : byCategory) {
+            if (stats != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private GradeStats statsFor(int category) {
+        if (category >= byCategory.length) {
+            byCategory = Arrays.copyOf(byCategory, category + 1);
+        }
+        if (byCategory[category] == null) {
+            byCategory[category] = new GradeStats();
+        }
+        return byCategory[category];
+    }
+}
@@ -0,0 +1,190 @@
+package edu.course.gradebook;
+
+import java.util.Arrays;
+
+/**
+ * A small, mergeable summary of a gradebook for analytics across many courses.
+ *
+ * It holds three sketches, each updated as grades and students change:
+ *
+ * - Grade distribution: a count per grade value 0–100. Because grades are
+ *   integers this is exact, so grade quantiles have no error.
+ * - Distribution of each student's plain (unweighted, uncurved) average:
+ *   counts in 0.1-point bins, so average quantiles are within ±0.05 points.
+ *   Both histograms handle removals, which t-digest or KLL sketches cannot;
+ *   removeLastGrade, undo and removeStudent all need them.
+ * - Distinct students: a HyperLogLog with 4096 registers (standard error
+ *   about 1.6%). It only grows, so removed students stay counted.
+ *
+ * Merging adds the histograms and takes the register-wise maximum, so the
+ * merged sketch answers for the union of the courses in a few microseconds
+ * and about 13 KB, regardless of class size. Not thread-safe.
+ */
+public final class GradeSketch {
+    private static final int AVERAGE_BINS_PER_POINT = 10;
+    private static final int AVERAGE_BINS = GradeStats.MAX_GRADE * AVERAGE_BINS_PER_POINT + 1;
+    private static final int PRECISION = 12;
+    private static final int REGISTERS = 1 << PRECISION;
+
+    private final long[] gradeCounts = new long[GradeStats.MAX_GRADE + 1];
+    private final long[] averageCounts = new long[AVERAGE_BINS];
+    private final byte[] registers = new byte[REGISTERS];
+    private long grades;
+    private long averages;
+
+    public GradeSketch() {
+    }
+
+    private GradeSketch(GradeSketch source) {
+        merge(source);
+    }
+
+    /**
+     * Returns an independent copy that later changes to this sketch will not affect.
+     */
+    public GradeSketch copy() {
+        return new GradeSketch(this);
+    }
+
+    /**
+     * Folds another sketch into this one, so this one describes both.
+     */
+    public void merge(GradeSketch other) {
+        for (int i = 0; i < gradeCounts.length; i++) {
+            gradeCounts[i] += other.gradeCounts[i];
+        }
+        for (int i = 0; i < averageCounts.length; i++) {
+            averageCounts[i] += other.averageCounts[i];
+        }
+        for (int i = 0; i < REGISTERS; i++) {
+            registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+        }
+        grades += other.grades;
+        averages += other.averages;
+    }
+
+    public long gradeCount() {
+        return grades;
+    }
+
+    /**
+     * Number of students with at least one grade.
+     */
+    public long gradedStudentCount() {
+        return averages;
+    }
+
+    /**
+     * Returns the exact q-quantile (0 ≤ q ≤ 1) of all grades, or -1 if there are none.
+     */
+    public int gradeQuantile(double q) {
+        return quantileBin(gradeCounts, grades, q);
+    }
+
+    /**
+     * Returns the q-quantile (0 ≤ q ≤ 1) of students' plain averages within
+     * ±0.05 points, or NaN if no student has grades.
+     */
+    public double averageQuantile(double q) {
+        int bin = quantileBin(averageCounts, averages, q);
+        return bin < 0 ? Double.NaN : (double) bin / AVERAGE_BINS_PER_POINT;
+    }
+
+    /**
+     * Estimates how many distinct student names were ever added.
+     */
+    public long distinctStudents() {
+        double harmonic = 0.0;
+        int empty = 0;
+        for (var register : registers) {
+            harmonic += 1.0 / (1L << register);
+            if (register == 0) {
+                empty++;
+            }
+        }
+        double alpha = 0.7213 / (1.0 + 1.079 / REGISTERS);
+        double estimate = alpha * REGISTERS * REGISTERS / harmonic;
+        if (estimate <= 2.5 * REGISTERS && empty > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / empty);
+        }
+        return Math.round(estimate);
+    }
+
+    void addGrade(int grade) {
+        gradeCounts[grade]++;
+        grades++;
+    }
+
+    void removeGrade(int grade) {
+        gradeCounts[grade]--;
+        grades--;
+    }
+
+    /**
+     * Moves a student's average from the bin for oldSum/oldCount to the bin for newSum/newCount.
+     * A count of zero means the student had, or has, no average.
+     */
+    void moveAverage(int oldCount, long oldSum, int newCount, long newSum) {
+        if (oldCount > 0) {
+            averageCounts[averageBin(oldCount, oldSum)]--;
+            averages--;
+        }
+        if (newCount > 0) {
+            averageCounts[averageBin(newCount, newSum)]++;
+            averages++;
+        }
+    }
+
+    void addStudentName(String name) {
+        long hash = hash(name);
+        int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        int rank = Long.numberOfLeadingZeros(hash << PRECISION | 1L << (PRECISION - 1)) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    void clear() {
+        Arrays.fill(gradeCounts, 0);
+        Arrays.fill(averageCounts, 0);
+        Arrays.fill(registers, (byte) 0);
+        grades = 0;
+        averages = 0;
+    }
+
+    private static int averageBin(int count, long sum) {
+        return (int) ((sum * AVERAGE_BINS_PER_POINT + count / 2) / count);
+    }
+
+    private static int quantileBin(long[] counts, long total, double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+        }
+        if (total == 0) {
+            return -1;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int bin = 0; bin < counts.length; bin++) {
+            seen += counts[bin];
+            if (seen >= rank) {
+                return bin;
+            }
+        }
+        return counts.length - 1;
+    }
+
+    /**
+     * 64-bit FNV-1a over the name's characters, finished with the SplitMix64 mixer.
+     */
+    private static long hash(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
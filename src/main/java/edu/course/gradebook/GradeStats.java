@@ -0,0 +1,117 @@
+package edu.course.gradebook;
+
+import java.nio.IntBuffer;
+
+/**
+ * Running aggregates for a multiset of grades in the range 0–100.
+ *
+ * Grades are kept in a counting array indexed by grade value, so adding or
+ * removing a grade is O(1) and the sum of the N lowest or highest grades can
+ * be read without sorting anything. The counting array is an IntBuffer so
+ * that it can live on the heap or in direct memory.
+ */
+final class GradeStats {
+    static final int MIN_GRADE = 0;
+    static final int MAX_GRADE = 100;
+    /** Estimated heap size of an instance with an on-heap counting array. */
+    static final long HEAP_BYTES = 32 + 48 + 16 + 4L * (MAX_GRADE + 1);
+    /** Estimated heap size of an instance whose counting array is in direct memory. */
+    static final long DIRECT_BYTES = 32 + 64;
+
+    private final IntBuffer histogram;
+    private int count;
+    private long sum;
+
+    GradeStats() {
+        this(IntBuffer.allocate(MAX_GRADE + 1));
+    }
+
+    /**
+     * Uses the given zero-filled buffer of at least 101 ints as the counting array.
+     */
+    GradeStats(IntBuffer histogram) {
+        this.histogram = histogram;
+    }
+
+    static void checkGrade(int grade) {
+        if (grade < MIN_GRADE || grade > MAX_GRADE) {
+            throw new IllegalArgumentException("Grade must be between " + MIN_GRADE + " and " + MAX_GRADE + ": " + grade);
+        }
+    }
+
+    void add(int grade) {
+        checkGrade(grade);
+        histogram.put(grade, histogram.get(grade) + 1);
+        count++;
+        sum += grade;
+    }
+
+    void remove(int grade) {
+        checkGrade(grade);
+        int tally = histogram.get(grade);
+        if (tally == 0) {
+            throw new IllegalStateException("Grade " + grade + " is not recorded");
+        }
+        histogram.put(grade, tally - 1);
+        count--;
+        sum -= grade;
+    }
+
+    IntBuffer histogram() {
+        return histogram;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long sum() {
+        return sum;
+    }
+
+    /**
+     * Returns the plain average of all grades, or NaN when there are none.
+     */
+    double average() {
+        return count == 0 ? Double.NaN : (double) sum / count;
+    }
+
+    /**
+     * Sums the n lowest grades by walking the counting array upwards.
+     * The walk is bounded by the 101 possible grade values, not by the number of grades.
+     */
+    long sumOfLowest(int n) {
+        long total = 0;
+        for (int grade = MIN_GRADE; n > 0 && grade <= MAX_GRADE; grade++) {
+            int taken = Math.min(n, histogram.get(grade));
+            total += (long) taken * grade;
+            n -= taken;
+        }
+        return total;
+    }
+
+    /**
+     * Sums the n highest grades by walking the counting array downwards.
+     */
+    long sumOfHighest(int n) {
+        long total = 0;
+        for (int grade = MAX_GRADE; n > 0 && grade >= MIN_GRADE; grade--) {
+            int taken = Math.min(n, histogram.get(grade));
+            total += (long) taken * grade;
+            n -= taken;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the average after ignoring the dropLowest lowest and dropHighest highest grades,
+     * or NaN when no grade is left.
+     */
+    double averageDropping(int dropLowest, int dropHighest) {
+        int kept = count - dropLowest - dropHighest;
+        if (kept <= 0) {
+            return Double.NaN;
+        }
+        return (double) (sum - sumOfLowest(dropLowest) - sumOfHighest(dropHighest)) / kept;
+    }
+}
@@ -0,0 +1,35 @@
+package edu.course.gradebook;
+
+/**
+ * Where a {@link Gradebook} keeps its grades, chosen when the gradebook is created.
+ */
+public enum GradeStorage {
+    /** Grades in on-heap lists (the default). */
+    HEAP("heap"),
+    /** Grade columns and counting arrays in direct buffers outside the garbage-collected heap. */
+    OFF_HEAP("off-heap");
+
+    private final String option;
+
+    GradeStorage(String option) {
+        this.option = option;
+    }
+
+    /**
+     * Returns the storage named by a command-line option value such as "off-heap".
+     *
+     * @throws IllegalArgumentException if the name is not recognized
+     */
+    public static GradeStorage fromOption(String option) {
+        for (var storage : values()) {
+            if (storage.option.equalsIgnoreCase(option)) {
+                return storage;
+            }
+        }
+        throw new IllegalArgumentException("Unknown storage: " + option + " (expected heap or off-heap)");
+    }
+
+    public String option() {
+        return option;
+    }
+}
@@ -0,0 +1,43 @@
+package edu.course.gradebook;
+
+import java.util.Collection;
+
+/**
+ * Creates the per-student grade storage for a gradebook.
+ */
+interface GradeStore {
+
+    static GradeStore create(GradeStorage storage) {
+        return switch (storage) {
+            case HEAP -> new HeapGradeStore();
+            case OFF_HEAP -> new OffHeapGradeStore();
+        };
+    }
+
+    /**
+     * Creates empty storage whose {@link StudentGrades#window()} covers the given number of grades.
+     */
+    StudentGrades newStudent(int windowLength);
+
+    /**
+     * Copies plain grades into new storage, filing all of them under the given category.
+     */
+    default StudentGrades copyOf(Collection<Integer> grades, int category, int windowLength) {
+        var student = newStudent(windowLength);
+        for (int grade : grades) {
+            student.append(grade, category);
+        }
+        return student;
+    }
+
+    /**
+     * Copies a student's grades, keeping each grade's category and window length, into new mutable storage.
+     */
+    default StudentGrades copyOf(StudentGrades grades) {
+        var student = newStudent(grades.window().length());
+        for (int i = 0; i < grades.size(); i++) {
+            student.append(grades.get(i), grades.categoryAt(i));
+        }
+        return student;
+    }
+}
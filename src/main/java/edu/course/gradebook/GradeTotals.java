@@ -0,0 +1,11 @@
+package edu.course.gradebook;
+
+/**
+ * The number and sum of a set of raw grades; totals from several partitions add up exactly.
+ */
+public record GradeTotals(long count, long sum) {
+
+    public GradeTotals plus(GradeTotals other) {
+        return new GradeTotals(count + other.count, sum + other.sum);
+    }
+}
@@ -0,0 +1,16 @@
+package edu.course.gradebook;
+
+/**
+ * A student's recent performance: the plain (unweighted, uncurved) average of
+ * their last few grades and the least-squares slope through them.
+ *
+ * @param count number of recent grades, at most {@link Gradebook#trendWindow()}
+ * @param average average of those grades
+ * @param slope change in grade per assignment across those grades; NaN with fewer than two
+ */
+public record GradeTrend(int count, double average, double slope) {
+
+    public boolean isDeclining() {
+        return slope < 0;
+    }
+}
@@ -0,0 +1,70 @@
+package edu.course.gradebook;
+
+/**
+ * A named condition on a student's curved average, such as "average below 70"
+ * or "letter grade below C", that a {@link Gradebook} keeps the set of matching
+ * students for (see {@link Gradebook#addWatch(GradeWatch)}).
+ */
+public final class GradeWatch {
+    private final String name;
+    private final double averageBelow;
+    private final String letterBelow;
+
+    private GradeWatch(String name, double averageBelow, String letterBelow) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Watch name must not be blank");
+        }
+        this.name = name;
+        this.averageBelow = averageBelow;
+        this.letterBelow = letterBelow;
+    }
+
+    /**
+     * Matches students whose average is below a threshold.
+     *
+     * @throws IllegalArgumentException if the threshold is outside 0–100
+     */
+    public static GradeWatch averageBelow(String name, double threshold) {
+        if (!(threshold >= GradeStats.MIN_GRADE && threshold <= GradeStats.MAX_GRADE)) {
+            throw new IllegalArgumentException("Watch threshold must be between 0 and 100: " + threshold);
+        }
+        return new GradeWatch(name, threshold, null);
+    }
+
+    /**
+     * Matches students whose letter grade is below the given letter under the
+     * current grading scheme; a scheme without that letter matches nobody.
+     */
+    public static GradeWatch letterBelow(String name, String letter) {
+        if (letter == null || letter.isBlank()) {
+            throw new IllegalArgumentException("Watch letter must not be blank");
+        }
+        return new GradeWatch(name, Double.NaN, letter);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * The curved average a student matches below under a scheme, or negative
+     * infinity if the scheme lacks the watched letter, so that nobody matches.
+     * Students without an average (NaN) never compare below it.
+     */
+    double threshold(GradingScheme scheme) {
+        if (letterBelow == null) {
+            return averageBelow;
+        }
+        for (var cutoff : scheme.cutoffs()) {
+            if (cutoff.letter().equals(letterBelow)) {
+                return cutoff.minimum();
+            }
+        }
+        return Double.NEGATIVE_INFINITY;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + (letterBelow == null ? "average below " + averageBelow : "letter below " + letterBelow);
+    }
+}
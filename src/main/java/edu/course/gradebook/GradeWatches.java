@@ -0,0 +1,116 @@
+package edu.course.gradebook;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The watches registered on a gradebook, each with the set of students that
+ * currently match it.
+ *
+ * Gradebook re-checks a student only when that student's grades change, so
+ * each check costs one comparison per watch, and listing a watch's students
+ * costs only the size of the result. A letter watch is resolved to its
+ * numeric cutoff when it is added and whenever the grading scheme changes.
+ * Changes to the curve or grading scheme move every average, so they
+ * re-check every student.
+ */
+final class GradeWatches {
+
+    private static final class Watched {
+        final GradeWatch watch;
+        final Set<String> students = new LinkedHashSet<>();
+        double threshold;
+
+        Watched(GradeWatch watch, double threshold) {
+            this.watch = watch;
+            this.threshold = threshold;
+        }
+    }
+
+    private final Map<String, Watched> watches = new LinkedHashMap<>();
+    private AlertDispatcher alerts;
+
+    boolean isEmpty() {
+        return watches.isEmpty();
+    }
+
+    boolean add(GradeWatch watch, GradingScheme scheme) {
+        return watches.putIfAbsent(watch.name(), new Watched(watch, watch.threshold(scheme))) == null;
+    }
+
+    /**
+     * Re-resolves every watch's threshold under a new scheme; the caller then re-checks every student.
+     */
+    void setScheme(GradingScheme scheme) {
+        for (var watched : watches.values()) {
+            watched.threshold = watched.watch.threshold(scheme);
+        }
+    }
+
+    boolean remove(String watch) {
+        return watches.remove(watch) != null;
+    }
+
+    List<GradeWatch> list() {
+        var list = new ArrayList<GradeWatch>(watches.size());
+        for (var watched : watches.values()) {
+            list.add(watched.watch);
+        }
+        return list;
+    }
+
+    /**
+     * Returns a read-only live view of a watch's matching students, or null if there is no such watch.
+     */
+    Set<String> students(String watch) {
+        var watched = watches.get(watch);
+        return watched == null ? null : Collections.unmodifiableSet(watched.students);
+    }
+
+    void setAlerts(AlertDispatcher alerts) {
+        this.alerts = alerts;
+    }
+
+    /**
+     * Records whether a student matches one watch, without raising an alert, when the watch is first added.
+     */
+    void seed(String watch, String student, double average) {
+        var watched = watches.get(watch);
+        if (average < watched.threshold) {
+            watched.students.add(student);
+        }
+    }
+
+    /**
+     * Re-checks one student against every watch, raising an alert for each watch they start or stop matching.
+     */
+    void check(String student, double average) {
+        for (var watched : watches.values()) {
+            boolean matching = average < watched.threshold;
+            boolean changed = matching ? watched.students.add(student) : watched.students.remove(student);
+            if (changed && alerts != null) {
+                alerts.offer(new WatchAlert(watched.watch.name(), student, matching, average));
+            }
+        }
+    }
+
+    /**
+     * Drops a removed student from every watch without an alert.
+     */
+    void forget(String student) {
+        for (var watched : watches.values()) {
+            watched.students.remove(student);
+        }
+    }
+
+    void clearStudents() {
+        for (var watched : watches.values()) {
+            watched.students.clear();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package edu.course.gradebook;
+
+/**
+ * Running aggregates over a student's last few grades; how many is fixed
+ * when the window is built (see {@link Gradebook#setTrendWindow(int)}).
+ *
+ * The window's grades sit in a ring buffer, so a new grade evicts the oldest
+ * in O(1). Alongside the plain sum it keeps the sum of each grade times its
+ * position in the window (0 for the oldest), which is all a least-squares
+ * slope needs; both sums shift in O(1) when the window slides. Dropping the
+ * newest grade slides the window back, so the caller passes in the grade
+ * that re-enters it.
+ */
+final class GradeWindow {
+    static final int DEFAULT_LENGTH = 5;
+    static final int MAX_LENGTH = 1000;
+
+    private final int[] ring;
+    private int head;
+    private int count;
+    private long sum;
+    private long weightedSum;
+
+    GradeWindow(int length) {
+        ring = new int[length];
+    }
+
+    int length() {
+        return ring.length;
+    }
+
+    /**
+     * Estimated heap size of this window.
+     */
+    long estimatedBytes() {
+        return 40 + 16 + 4L * ring.length;
+    }
+
+    void append(int grade) {
+        if (count < ring.length) {
+            ring[(head + count) % ring.length] = grade;
+            weightedSum += (long) count * grade;
+            sum += grade;
+            count++;
+            return;
+        }
+        int evicted = ring[head];
+        weightedSum += (long) (ring.length - 1) * grade - (sum - evicted);
+        sum += grade - evicted;
+        ring[head] = grade;
+        head = (head + 1) % ring.length;
+    }
+
+    /**
+     * Removes the newest grade from the window.
+     *
+     * @param reentering the grade just before the window, which slides back into it, or -1 if there is none
+     */
+    void dropLast(int grade, int reentering) {
+        if (reentering < 0) {
+            count--;
+            sum -= grade;
+            weightedSum -= (long) count * grade;
+            return;
+        }
+        weightedSum += sum - (long) ring.length * grade;
+        sum += reentering - grade;
+        head = (head + ring.length - 1) % ring.length;
+        ring[head] = reentering;
+    }
+
+    /**
+     * Returns the trend over the window, or null if it holds no grades.
+     */
+    GradeTrend trend() {
+        if (count == 0) {
+            return null;
+        }
+        double average = (double) sum / count;
+        if (count < 2) {
+            return new GradeTrend(count, average, Double.NaN);
+        }
+        long n = count;
+        long positionSum = n * (n - 1) / 2;
+        long positionSquares = (n - 1) * n * (2 * n - 1) / 6;
+        double slope = (double) (n * weightedSum - positionSum * sum) / (n * positionSquares - positionSum * positionSum);
+        return new GradeTrend(count, average, slope);
+    }
+
+    /**
+     * Builds a window over the last grades of a list, for forms that don't keep
+     * one and for lists whose window length changes.
+     */
+    static GradeWindow of(StudentGrades grades, int length) {
+        var window = new GradeWindow(length);
+        for (int i = Math.max(0, grades.size() - length); i < grades.size(); i++) {
+            window.append(grades.get(i));
+        }
+        return window;
+    }
+
+    /**
+     * The grade that slides back into the window when the last of the first size grades is dropped, or -1.
+     */
+    int reentering(StudentGrades grades, int size) {
+        return size > ring.length ? grades.get(size - ring.length - 1) : -1;
+    }
+}
@@ -1,97 +1,512 @@
 package edu.course.gradebook;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
 import java.util.*;
 
 public class Gradebook {
 
-    private final Map<String, List<Integer>> gradesByStudent = new HashMap<>();
-    private final Deque<UndoAction> undoStack = new ArrayDeque<>();
-    private final LinkedList<String> activityLog = new LinkedList<>();
+    private static final GradeKernels KERNELS = GradeKernels.create();
+    static final int MIN_LOG_ENTRIES = 10;
+    private static final int DEFAULT_DEDUPE_REQUESTS = 1 << 16;
+    private static final Duration DEFAULT_DEDUPE_TTL = Duration.ofMinutes(10);
+
+    private final GradeStorage storage;
+    private GradeStore store;
+    private Map<String, List<Integer>> gradesByStudent = new HashMap<>();
+    private Deque<UndoAction> undoStack = new ArrayDeque<>();
+    private LinkedList<String> activityLog = new LinkedList<>();
+    private final Map<String, Integer> categoryIndexes = new HashMap<>();
+    private final List<String> categoryNames = new ArrayList<>();
+    private GradingScheme gradingScheme = GradingScheme.standard();
+    private GradeEvaluator evaluator = GradeEvaluator.compile(gradingScheme, this::categoryIndex);
+    private GradeCsv csv;
+    private ReportWriter reportWriter;
+    private AuditLog auditLog;
+    private ReplicationLog replication;
+    private double curveScale = 1.0;
+    private double curveOffset = 0.0;
+    private final int[] histogramScratch = new int[GradeKernels.HISTOGRAM_LENGTH];
+    private final double[] momentsScratch = new double[3];
+    private GradeSketch sketch = new GradeSketch();
+    private boolean undoPinned;
+    private boolean keepsHistory = true;
+    private final GradeWatches watches = new GradeWatches();
+    private final Map<String, ArchivedTerm> archivedTerms = new LinkedHashMap<>();
+    private final MemoryAccount memory = new MemoryAccount();
+    private long memoryBudget = Long.MAX_VALUE;
+    private DedupeCache dedupe;
+    private long versionClock;
+    private Duration coldAfter;
+    private int trendWindow = GradeWindow.DEFAULT_LENGTH;
+    private long lastColdSweep = System.nanoTime();
+
+    public Gradebook() {
+        this(GradeStorage.HEAP);
+    }
+
+    /**
+     * Creates a gradebook that keeps its grades in the given storage.
+     */
+    public Gradebook(GradeStorage storage) {
+        this.storage = storage;
+        this.store = GradeStore.create(storage);
+    }
+
+    public GradeStorage storage() {
+        return storage;
+    }
 
     public Optional<List<Integer>> findStudentGrades(String name) {
-        return Optional.ofNullable(gradesByStudent.get(name));
+        return findStudent(name).map(Collections::unmodifiableList);
+    }
+
+    private Optional<StudentGrades> findStudent(String name) {
+        return Optional.ofNullable((StudentGrades) gradesByStudent.get(name));
+    }
+
+    /**
+     * Looks a student up for a change, unpacking a cold student first.
+     */
+    private Optional<StudentGrades> findMutableStudent(String name) {
+        var grades = (StudentGrades) gradesByStudent.get(name);
+        if (grades != null && grades.isPacked()) {
+            var version = grades.version();
+            var packedBytes = grades.estimatedBytes();
+            grades = store.copyOf(grades);
+            grades.setVersion(version);
+            gradesByStudent.put(name, grades);
+            memory.studentBytes += grades.estimatedBytes() - packedBytes;
+        }
+        return Optional.ofNullable(grades);
     }
 
+    /**
+     * @throws IllegalStateException if the memory budget is used up even after shedding
+     *         (see {@link #setMemoryBudget(long)})
+     */
     public boolean addStudent(String name) {
-        var result = gradesByStudent.putIfAbsent(name, new ArrayList<Integer>());
+        if (gradesByStudent.containsKey(name)) {
+            return false;
+        }
+        checkBudgetFor(name);
+        return insertStudent(name);
+    }
+
+    private boolean insertStudent(String name) {
+        var grades = newStudent();
+        var result = gradesByStudent.putIfAbsent(name, grades);
         if (result == null) {
-            activityLog.addFirst("Added student " + name);
+            memory.studentBytes += MemoryAccount.student(name, grades);
+            sketch.addStudentName(name);
+            if (replication != null) {
+                replication.studentAdded(name);
+            }
+            log("Added student " + name);
             return true;
         }
         return false;
     }
 
+    /**
+     * Adds a student with a copy of the given grades, filed under the default category.
+     *
+     * @return false if the student already exists or a grade is missing or outside 0–100
+     * @throws IllegalStateException if the memory budget is used up even after shedding
+     *         (see {@link #setMemoryBudget(long)})
+     */
     public boolean addStudent(String name, ArrayList<Integer> grades) {
+        if (gradesByStudent.containsKey(name)) {
+            return false;
+        }
+        for (var grade : grades) {
+            if (grade == null || grade < GradeStats.MIN_GRADE || grade > GradeStats.MAX_GRADE) {
+                return false;
+            }
+        }
+        checkBudgetFor(name);
+        var copy = store.copyOf(grades, categoryIndex(GradingScheme.DEFAULT_CATEGORY), trendWindow);
+        copy.setVersion(++versionClock);
+        var group = beginGroup();
+        try {
+            return restoreStudent(name, copy);
+        } finally {
+            endGroup(group);
+        }
+    }
+
+    private StudentGrades newStudent() {
+        var grades = store.newStudent(trendWindow);
+        grades.setVersion(++versionClock);
+        return grades;
+    }
+
+    private boolean restoreStudent(String name, StudentGrades grades) {
         var result = gradesByStudent.putIfAbsent(name, grades);
         if (result == null) {
-            activityLog.addFirst("Added student " + name + " with grades " + grades);
+            memory.studentBytes += MemoryAccount.student(name, grades);
+            sketch.addStudentName(name);
+            sketchStudent(grades, true);
+            if (replication != null) {
+                replicateStudent(name, grades);
+            }
+            checkWatches(name, grades);
+            log("Added student " + name + " with grades " + grades);
             return true;
         }
         return false;
     }
 
     public boolean addGrade(String name, int grade) {
-        var gradesOptional = findStudentGrades(name);
+        return addGrade(name, GradingScheme.DEFAULT_CATEGORY, grade);
+    }
+
+    /**
+     * Adds a grade filed under a category such as "homework" or "exams".
+     *
+     * @throws IllegalArgumentException if the grade is outside 0–100
+     */
+    public boolean addGrade(String name, String category, int grade) {
+        GradeStats.checkGrade(grade);
+        var gradesOptional = findMutableStudent(name);
         if (gradesOptional.isEmpty()) {
             return false;
         }
         var grades = gradesOptional.get();
-        grades.add(grade);
-        activityLog.addFirst("Added grade " + grade + " for student " + name);
-        undoStack.push(g -> g.removeLastGrade(name));
+        appendGrade(name, grades, grade, categoryIndex(category));
+        if (category.equals(GradingScheme.DEFAULT_CATEGORY)) {
+            log("Added grade " + grade + " for student " + name);
+        } else {
+            log("Added " + category + " grade " + grade + " for student " + name);
+        }
+        pushUndo(g -> g.removeLastGrade(name));
+        compactIfDue();
         return true;
     }
 
     public int removeLastGrade(String name) {
-        var gradesOptional = findStudentGrades(name);
+        var gradesOptional = findMutableStudent(name);
         if (gradesOptional.isEmpty()) {
-            activityLog.addFirst(name + " is not in the student list");
+            log(name + " is not in the student list");
             return -1;
         }
         try {
             var grades = gradesOptional.get();
-            int grade = grades.removeLast();
-            activityLog.addFirst("Removed grade " + grade + " for student " + name);
+            int grade = dropLastGrade(name, grades);
+            log("Removed grade " + grade + " for student " + name);
             return grade;
         } catch (NoSuchElementException e) {
-            activityLog.addFirst("No grade for student " + name);
+            log("No grade for student " + name);
             return -1;
         }
     }
 
     public boolean removeStudent(String name) {
-        var gradesOptional = findStudentGrades(name);
+        var gradesOptional = findStudent(name);
         if (gradesOptional.isEmpty()) {
             return false;
         }
-        var grades = (ArrayList<Integer>) gradesOptional.get();
+        var grades = gradesOptional.get();
         gradesByStudent.remove(name);
+        memory.studentBytes -= MemoryAccount.student(name, grades);
+        sketchStudent(grades, false);
+        watches.forget(name);
+        if (replication != null) {
+            replication.studentRemoved(name);
+        }
         if (grades.isEmpty()) {
-            activityLog.addFirst("Removed student " + name + " there were no grades currently recorded");
-            undoStack.push(g -> g.addStudent(name));
+            log("Removed student " + name + " there were no grades currently recorded");
+            grades.release();
+            pushUndo(g -> g.insertStudent(name));
         } else {
-            activityLog.addFirst("Removed student " + name + " with grades " + grades);
-            undoStack.push(g -> g.addStudent(name, grades));
+            log("Removed student " + name + " with grades " + grades);
+            pushUndo(g -> g.restoreStudent(name, grades), grades.estimatedBytes(), List.of(grades));
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@link #addStudent(String)}, but applied at most once per request id.
+     *
+     * A retry carrying an id already seen within the dedupe window (see
+     * {@link #setDedupeWindow(int, Duration)}) returns the first call's result
+     * and changes nothing, not even the activity log. A call that throws is not
+     * remembered, so its retry runs again.
+     */
+    public boolean addStudent(String name, long requestId) {
+        int seen = dedupe().lookup(requestId);
+        return seen != DedupeCache.NOT_SEEN ? seen == 1 : remember(requestId, addStudent(name));
+    }
+
+    /**
+     * Same as {@link #addGrade(String, String, int)}, but applied at most once
+     * per request id (see {@link #addStudent(String, long)}).
+     */
+    public boolean addGrade(String name, String category, int grade, long requestId) {
+        int seen = dedupe().lookup(requestId);
+        return seen != DedupeCache.NOT_SEEN ? seen == 1 : remember(requestId, addGrade(name, category, grade));
+    }
+
+    /**
+     * Same as {@link #removeStudent(String)}, but applied at most once per
+     * request id (see {@link #addStudent(String, long)}).
+     */
+    public boolean removeStudent(String name, long requestId) {
+        int seen = dedupe().lookup(requestId);
+        return seen != DedupeCache.NOT_SEEN ? seen == 1 : remember(requestId, removeStudent(name));
+    }
+
+    /**
+     * Remembers at most maxRequests request ids, each for at most ttl, forgetting
+     * every id seen so far. The default is 65,536 ids for 10 minutes.
+     *
+     * @throws IllegalArgumentException if maxRequests or ttl is not positive
+     */
+    public void setDedupeWindow(int maxRequests, Duration ttl) {
+        useDedupe(new DedupeCache(maxRequests, ttl));
+    }
+
+    /**
+     * Number of retried requests answered from the dedupe window instead of being applied again.
+     */
+    public long duplicateRequests() {
+        return dedupe == null ? 0 : dedupe.hits();
+    }
+
+    private DedupeCache dedupe() {
+        if (dedupe == null) {
+            useDedupe(new DedupeCache(DEFAULT_DEDUPE_REQUESTS, DEFAULT_DEDUPE_TTL));
+        }
+        return dedupe;
+    }
+
+    private void useDedupe(DedupeCache cache) {
+        memory.dedupeBytes = cache.estimatedBytes();
+        dedupe = cache;
+        enforceBudget();
+    }
+
+    private boolean remember(long requestId, boolean result) {
+        dedupe.record(requestId, result ? 1 : 0);
+        return result;
+    }
+
+    /**
+     * Returns a snapshot of this gradebook's grade, average and distinct-student
+     * sketches, ready to be merged with other courses' sketches.
+     */
+    public GradeSketch sketch() {
+        return sketch.copy();
+    }
+
+    private void appendGrade(String name, StudentGrades grades, int grade, int category) {
+        int count = grades.size();
+        long sum = grades.gradeSum();
+        long bytes = grades.estimatedBytes();
+        grades.append(grade, category);
+        memory.studentBytes += grades.estimatedBytes() - bytes;
+        grades.setVersion(++versionClock);
+        sketch.addGrade(grade);
+        sketch.moveAverage(count, sum, count + 1, sum + grade);
+        if (replication != null) {
+            replication.gradeAdded(name, grade, categoryNames.get(category));
+        }
+        checkWatches(name, grades);
+    }
+
+    private int dropLastGrade(String name, StudentGrades grades) {
+        int count = grades.size();
+        long sum = grades.gradeSum();
+        long bytes = grades.estimatedBytes();
+        int grade = grades.dropLast();
+        memory.studentBytes += grades.estimatedBytes() - bytes;
+        grades.setVersion(++versionClock);
+        sketch.removeGrade(grade);
+        sketch.moveAverage(count, sum, count - 1, sum - grade);
+        if (replication != null) {
+            replication.gradeDropped(name);
+        }
+        checkWatches(name, grades);
+        return grade;
+    }
+
+    /**
+     * Registers a watch and finds the students already matching it, so that
+     * from now on {@link #watchedStudents(String)} answers without scanning.
+     * Each later grade change re-checks only that student, and an alert goes to
+     * the {@link AlertDispatcher}, if any, whenever a student starts or stops matching.
+     *
+     * @return false if a watch with the same name is already registered
+     */
+    public boolean addWatch(GradeWatch watch) {
+        if (!watches.add(watch, gradingScheme)) {
+            return false;
+        }
+        for (var entry : gradesByStudent.entrySet()) {
+            watches.seed(watch.name(), entry.getKey(), curvedAverage((StudentGrades) entry.getValue()));
         }
         return true;
     }
 
+    public boolean removeWatch(String name) {
+        return watches.remove(name);
+    }
+
+    public List<GradeWatch> watches() {
+        return watches.list();
+    }
+
+    /**
+     * Returns the students currently matching a watch, in the order they started
+     * matching, or empty if there is no such watch. Costs only the size of the result.
+     */
+    public Optional<List<String>> watchedStudents(String watch) {
+        var students = watches.students(watch);
+        return students == null ? Optional.empty() : Optional.of(List.copyOf(students));
+    }
+
+    /**
+     * Sends watch alerts to a dispatcher from now on, or stops sending them when
+     * given null. The caller still owns the dispatcher and closes it.
+     */
+    public void setAlertDispatcher(AlertDispatcher alerts) {
+        watches.setAlerts(alerts);
+    }
+
+    private void checkWatches(String name, StudentGrades grades) {
+        if (!watches.isEmpty()) {
+            watches.check(name, curvedAverage(grades));
+        }
+    }
+
+    private void checkAllWatches() {
+        if (watches.isEmpty()) {
+            return;
+        }
+        for (var entry : gradesByStudent.entrySet()) {
+            checkWatches(entry.getKey(), (StudentGrades) entry.getValue());
+        }
+    }
+
+    private void sketchStudent(StudentGrades grades, boolean added) {
+        for (int grade : grades) {
+            if (added) {
+                sketch.addGrade(grade);
+            } else {
+                sketch.removeGrade(grade);
+            }
+        }
+        int count = grades.size();
+        long sum = grades.gradeSum();
+        sketch.moveAverage(added ? 0 : count, sum, added ? count : 0, sum);
+    }
+
     public Optional<Double> averageFor(String name) {
-        var gradesOptional = findStudentGrades(name);
+        var average = averageOrNaN(name);
+        return Double.isNaN(average) ? Optional.empty() : Optional.of(average);
+    }
+
+    /**
+     * Same as {@link #averageFor(String)} without boxing the average.
+     */
+    public OptionalDouble averageAsDouble(String name) {
+        var average = averageOrNaN(name);
+        return Double.isNaN(average) ? OptionalDouble.empty() : OptionalDouble.of(average);
+    }
+
+    private double averageOrNaN(String name) {
+        var grades = (StudentGrades) gradesByStudent.get(name);
+        return grades == null ? Double.NaN : curvedAverage(grades);
+    }
+
+    private double curvedAverage(StudentGrades grades) {
+        var average = evaluator.average(grades);
+        return Double.isNaN(average) ? Double.NaN : curved(average);
+    }
+
+    /**
+     * Fills a caller-supplied summary with a student's grades, average and
+     * letter grade from a single lookup, so a report needs no other query.
+     * Unlike {@link #letterGradeFor(String)}, this doesn't write to the activity log.
+     *
+     * @return false, leaving the summary unchanged, if there is no such student
+     */
+    public boolean summarize(String name, StudentSummary into) {
+        var grades = (StudentGrades) gradesByStudent.get(name);
+        if (grades == null) {
+            return false;
+        }
+        var average = curvedAverage(grades);
+        into.fill(name, grades, average, letterOrNull(average));
+        return true;
+    }
+
+    /**
+     * Returns the plain average of a student's grades after ignoring the
+     * dropLowest lowest and dropHighest highest of them.
+     *
+     * The student's grades are tallied in a counting array as they are added
+     * and removed (including by undo), so this never sorts their grades.
+     * Returns empty if the student is unknown or no grade is left after dropping.
+     */
+    public Optional<Double> adjustedAverageFor(String name, int dropLowest, int dropHighest) {
+        if (dropLowest < 0 || dropHighest < 0) {
+            throw new IllegalArgumentException("Drop counts must not be negative");
+        }
+        var gradesOptional = findStudent(name);
         if (gradesOptional.isEmpty()) {
             return Optional.empty();
         }
-        var grades = gradesOptional.get();
-        if (grades.isEmpty()) {
-            return Optional.empty();
-        } else {
-            var average = 0.0;
-            for (int grade : grades) {
-                average += grade;
-            }
-            average /= grades.size();
-            return Optional.of(average);
+        var average = gradesOptional.get().overall().averageDropping(dropLowest, dropHighest);
+        return Double.isNaN(average) ? Optional.empty() : Optional.of(curved(average));
+    }
+
+    /**
+     * Sets how many of each student's most recent grades {@link #trendFor(String)}
+     * covers; the default is 5. Every student's window is rebuilt from their
+     * grades, so this takes time in proportion to the number of students.
+     *
+     * @throws IllegalArgumentException if grades is not between 1 and 1000
+     */
+    public void setTrendWindow(int grades) {
+        if (grades < 1 || grades > GradeWindow.MAX_LENGTH) {
+            throw new IllegalArgumentException("Trend window must be between 1 and " + GradeWindow.MAX_LENGTH + " grades");
         }
+        restoreTrendWindow(grades);
+        log("Set trend window to " + grades + " grades");
+    }
+
+    public int trendWindow() {
+        return trendWindow;
+    }
+
+    private void restoreTrendWindow(int grades) {
+        trendWindow = grades;
+        for (var value : gradesByStudent.values()) {
+            var student = (StudentGrades) value;
+            long bytes = student.estimatedBytes();
+            student.resizeWindow(grades);
+            memory.studentBytes += student.estimatedBytes() - bytes;
+        }
+        if (replication != null) {
+            replication.trendWindowSet(grades);
+        }
+    }
+
+    /**
+     * Returns the plain average and least-squares slope of a student's last
+     * {@link #trendWindow()} grades (see {@link GradeTrend}), or empty if the
+     * student is unknown or has none.
+     *
+     * The window is kept up to date as grades are added and removed (including
+     * by undo), so this doesn't look at the student's other grades.
+     */
+    public Optional<GradeTrend> trendFor(String name) {
+        var grades = (StudentGrades) gradesByStudent.get(name);
+        return grades == null ? Optional.empty() : Optional.ofNullable(grades.window().trend());
     }
 
     public Optional<String> letterGradeFor(String name) {
@@ -99,55 +514,997 @@ public class Gradebook {
         if (!averageObject.isPresent()) {
             return Optional.empty();
         }
-        var average =  averageObject.get();
-        return switch ((int) average.doubleValue()/10) {
-                case 9,10 -> { activityLog.addFirst(name + "'s letter grade is an A");
-                    yield Optional.of("A"); }
-                case 8 -> { activityLog.addFirst(name + "'s letter grade is a B");
-                    yield Optional.of("B"); }
-                case 7 -> { activityLog.addFirst(name + "'s letter grade is a C");
-                    yield Optional.of("C"); }
-                case 6 -> { activityLog.addFirst(name + "'s letter grade is a D");
-                    yield Optional.of("D"); }
-                default -> { activityLog.addFirst(name + " has failed");
-                     yield Optional.of("F"); }
-            };
+        var letter = evaluator.letterFor(averageObject.get());
+        var failingLetter = gradingScheme.cutoffs().getLast().letter();
+        log(switch (letter) {
+            case String failed when failed.equals(failingLetter) -> {
+                yield name + " has failed";
+            }
+            case String vowel when vowel.startsWith("A") || vowel.startsWith("E") -> {
+                yield name + "'s letter grade is an " + vowel;
+            }
+            default -> {
+                yield name + "'s letter grade is a " + letter;
+            }
+        });
+        return Optional.of(letter);
     }
 
-    public Optional<Double> classAverage() {
-        if (gradesByStudent.isEmpty()) {
+    /**
+     * Replaces the grading scheme used by {@link #averageFor(String)} and {@link #letterGradeFor(String)}.
+     *
+     * The scheme is compiled once here; per-category aggregates are already kept
+     * for every student, so no grades are rescanned.
+     */
+    public void setGradingScheme(GradingScheme scheme) {
+        applyScheme(scheme);
+        log("Set grading scheme " + scheme);
+    }
+
+    private void applyScheme(GradingScheme scheme) {
+        evaluator = GradeEvaluator.compile(scheme, this::categoryIndex);
+        gradingScheme = scheme;
+        if (replication != null) {
+            replication.schemeSet(scheme);
+        }
+        watches.setScheme(scheme);
+        checkAllWatches();
+    }
+
+    public GradingScheme gradingScheme() {
+        return gradingScheme;
+    }
+
+    private int categoryIndex(String category) {
+        var index = categoryIndexes.get(category);
+        if (index != null) {
+            return index;
+        }
+        if (categoryNames.size() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many grade categories");
+        }
+        categoryNames.add(category);
+        categoryIndexes.put(category, categoryNames.size() - 1);
+        return categoryNames.size() - 1;
+    }
+
+    /**
+     * Number and sum of every raw grade, for merging class averages across partitions.
+     */
+    GradeTotals totals() {
+        long sum = 0;
+        long count = 0;
+        for (var grades : gradesByStudent.values()) {
+            sum += ((StudentGrades) grades).gradeSum();
+            count += grades.size();
+        }
+        return new GradeTotals(count, sum);
+    }
+
+    List<String> studentNames() {
+        return new ArrayList<>(gradesByStudent.keySet());
+    }
+
+    /**
+     * Removes a student, without an undo step, so it can move to another partition.
+     */
+    Optional<MovedStudent> takeStudent(String name) {
+        var grades = (StudentGrades) gradesByStudent.get(name);
+        if (grades == null) {
             return Optional.empty();
         }
-        double classAverage = 0.0;
-        var students = gradesByStudent.keySet();
+        var categories = new ArrayList<String>(grades.size());
+        for (int i = 0; i < grades.size(); i++) {
+            categories.add(categoryNames.get(grades.categoryAt(i)));
+        }
+        // Copies the grades, so the student's own storage can be released
+        var moved = new MovedStudent(name, grades, categories);
+        discardStudent(name);
+        log("Moved student " + name + " to another partition");
+        return Optional.of(moved);
+    }
+
+    /**
+     * Adds a student moved from another partition, without an undo step.
+     */
+    boolean putStudent(MovedStudent student) {
+        var name = student.name();
+        var grades = newStudent();
+        if (gradesByStudent.putIfAbsent(name, grades) != null) {
+            return false;
+        }
+        memory.studentBytes += MemoryAccount.student(name, grades);
+        sketch.addStudentName(name);
+        var group = beginGroup();
+        try {
+            if (replication != null) {
+                replication.studentAdded(name);
+            }
+            for (int i = 0; i < student.grades().size(); i++) {
+                appendGrade(name, grades, student.grades().get(i), categoryIndex(student.categories().get(i)));
+            }
+            log("Moved student " + name + " in from another partition");
+        } finally {
+            endGroup(group);
+        }
+        return true;
+    }
+
+    public Optional<Double> classAverage() {
+        var average = classAverageAsDouble();
+        return average.isPresent() ? Optional.of(average.getAsDouble()) : Optional.empty();
+    }
+
+    /**
+     * Same as {@link #classAverage()} without boxing the average.
+     */
+    public OptionalDouble classAverageAsDouble() {
+        long total = 0;
         var numGrades = 0;
-        for (var student : students) {
-            var optionalGrades = findStudentGrades(student);
-            if (optionalGrades.isEmpty()) {
-                continue;
+        for (var grades : gradesByStudent.values()) {
+            total += ((StudentGrades) grades).gradeSum();
+            numGrades += grades.size();
+        }
+        if (numGrades == 0) {
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of(curved((double) total / numGrades));
+    }
+
+    /**
+     * Packs students whose grades have not changed for the given time into a
+     * compact read-only form (see {@link PackedGradeList}). A packed student is
+     * unpacked again by the next grade change. Only heap storage is packed.
+     *
+     * @return the number of students packed by this call
+     */
+    public int compactIdleStudents(Duration idleFor) {
+        lastColdSweep = System.nanoTime();
+        if (storage != GradeStorage.HEAP) {
+            return 0;
+        }
+        int packed = 0;
+        for (var entry : gradesByStudent.entrySet()) {
+            var grades = (StudentGrades) entry.getValue();
+            if (!grades.isPacked() && !grades.isEmpty() && lastColdSweep - grades.lastModified() >= idleFor.toNanos()) {
+                var packedGrades = PackedGradeList.pack(grades);
+                entry.setValue(packedGrades);
+                memory.studentBytes += packedGrades.estimatedBytes() - grades.estimatedBytes();
+                packed++;
+            }
+        }
+        if (packed > 0) {
+            log("Packed " + packed + " idle students");
+        }
+        return packed;
+    }
+
+    /**
+     * Packs students automatically once they have been idle this long; null turns it off (the default).
+     * The check runs from addGrade at most once per period.
+     */
+    public void setColdAfter(Duration idleFor) {
+        coldAfter = idleFor;
+    }
+
+    public Optional<Duration> coldAfter() {
+        return Optional.ofNullable(coldAfter);
+    }
+
+    /**
+     * Reports how many students are packed and the heap this saves.
+     */
+    public ColdStorageReport coldStorageReport() {
+        int students = 0;
+        long unpacked = 0;
+        long packed = 0;
+        for (var grades : gradesByStudent.values()) {
+            if (grades instanceof PackedGradeList packedGrades) {
+                students++;
+                unpacked += packedGrades.unpackedBytes();
+                packed += packedGrades.estimatedBytes();
+            }
+        }
+        return new ColdStorageReport(students, unpacked, packed);
+    }
+
+    private void compactIfDue() {
+        if (coldAfter != null && System.nanoTime() - lastColdSweep >= coldAfter.toNanos()) {
+            compactIdleStudents(coldAfter);
+        }
+    }
+
+    /**
+     * Returns count, mean, variance, min and max over every raw grade in the class.
+     *
+     * Each student's counting array is merged into one class-wide array and
+     * the moments are taken from that, both with the {@link GradeKernels}
+     * chosen at startup.
+     */
+    public Optional<GradeDistribution> classDistribution() {
+        Arrays.fill(histogramScratch, 0);
+        for (var grades : gradesByStudent.values()) {
+            accumulate(histogramScratch, (StudentGrades) grades);
+        }
+        return distribution(histogramScratch);
+    }
+
+    /**
+     * Returns count, mean, variance, min and max over one student's raw grades.
+     */
+    public Optional<GradeDistribution> distributionFor(String name) {
+        var gradesOptional = findStudent(name);
+        if (gradesOptional.isEmpty()) {
+            return Optional.empty();
+        }
+        Arrays.fill(histogramScratch, 0);
+        accumulate(histogramScratch, gradesOptional.get());
+        return distribution(histogramScratch);
+    }
+
+    /**
+     * Adds a student's counting array into total; a packed student's grades are tallied directly.
+     */
+    private static void accumulate(int[] total, StudentGrades grades) {
+        if (grades instanceof PackedGradeList packed) {
+            packed.countInto(total);
+        } else {
+            KERNELS.accumulate(total, grades.overall().histogram());
+        }
+    }
+
+    /**
+     * Counts students per letter grade under the current scheme and curve,
+     * in cutoff order. Students without grades are not counted.
+     */
+    public Map<String, Integer> letterDistribution() {
+        var counts = new LinkedHashMap<String, Integer>();
+        for (var cutoff : gradingScheme.cutoffs()) {
+            counts.put(cutoff.letter(), 0);
+        }
+        for (var grades : gradesByStudent.values()) {
+            var average = evaluator.average((StudentGrades) grades);
+            if (!Double.isNaN(average)) {
+                counts.merge(evaluator.letterFor(curved(average)), 1, Integer::sum);
             }
-            var grades = optionalGrades.get();
+        }
+        return counts;
+    }
+
+    /**
+     * Names the aggregation kernels picked at startup, "scalar" or "vector (...)".
+     */
+    public static String kernels() {
+        return KERNELS.name();
+    }
+
+    private Optional<GradeDistribution> distribution(int[] histogram) {
+        KERNELS.moments(histogram, momentsScratch);
+        var count = momentsScratch[0];
+        if (count == 0) {
+            return Optional.empty();
+        }
+        var mean = momentsScratch[1] / count;
+        var variance = Math.max(0.0, momentsScratch[2] / count - mean * mean);
+        int min = 0;
+        while (histogram[min] == 0) {
+            min++;
+        }
+        int max = GradeStats.MAX_GRADE;
+        while (histogram[max] == 0) {
+            max--;
+        }
+        return Optional.of(new GradeDistribution((long) count, mean, variance, min, max));
+    }
+
+    /**
+     * Curves the whole class: every average read afterwards is multiplied by
+     * scale and then has offset added, on top of any earlier curve.
+     *
+     * No grade is rewritten; the combined transform is applied when an
+     * average is read, so this is O(1) however many students there are.
+     * Curved averages are kept within 0–100. Undo removes this curve only.
+     */
+    public void curve(double scale, double offset) {
+        if (!(scale > 0) || !Double.isFinite(scale) || !Double.isFinite(offset)) {
+            throw new IllegalArgumentException("Curve scale must be positive and both values finite");
+        }
+        var previousScale = curveScale;
+        var previousOffset = curveOffset;
+        restoreCurve(scale * previousScale, scale * previousOffset + offset);
+        log("Curved grades by x" + scale + " +" + offset);
+        pushUndo(g -> g.restoreCurve(previousScale, previousOffset));
+    }
+
+    /**
+     * Scales the current curve so the highest curved student average becomes target.
+     *
+     * Finding the highest average is a single pass over the students; the curve itself is O(1).
+     *
+     * @return false if no student has grades yet
+     */
+    public boolean curveToTop(double target) {
+        var top = Double.NaN;
+        for (var grades : gradesByStudent.values()) {
+            var average = evaluator.average((StudentGrades) grades);
+            if (!(average <= top)) {
+                top = average;
+            }
+        }
+        var curvedTop = Double.isNaN(top) ? 0.0 : top * curveScale + curveOffset;
+        if (!(curvedTop > 0)) {
+            return false;
+        }
+        curve(target / curvedTop, 0.0);
+        return true;
+    }
+
+    /**
+     * Removes every curve, as one undoable step.
+     */
+    public void resetCurve() {
+        var previousScale = curveScale;
+        var previousOffset = curveOffset;
+        restoreCurve(1.0, 0.0);
+        log("Removed curve");
+        pushUndo(g -> g.restoreCurve(previousScale, previousOffset));
+    }
+
+    public double curveScale() {
+        return curveScale;
+    }
+
+    public double curveOffset() {
+        return curveOffset;
+    }
+
+    private void restoreCurve(double scale, double offset) {
+        curveScale = scale;
+        curveOffset = offset;
+        if (replication != null) {
+            replication.curveSet(scale, offset);
+        }
+        checkAllWatches();
+    }
+
+    private double curved(double average) {
+        var result = average * curveScale + curveOffset;
+        return Math.max(GradeStats.MIN_GRADE, Math.min(GradeStats.MAX_GRADE, result));
+    }
+
+    /**
+     * Streams grade rows in from CSV or TSV (see {@link GradeCsv} for the format).
+     *
+     * Students that don't exist yet are created. The whole import is a single
+     * undo step, and if any row is malformed nothing from the file is kept.
+     *
+     * @return the number of grades imported
+     * @throws IllegalArgumentException if a row is malformed
+     */
+    public long importGrades(ReadableByteChannel in, char delimiter) throws IOException {
+        var batch = new ImportBatch();
+        var group = beginGroup();
+        try {
+            csv().read(in, delimiter, batch::apply);
+            log("Imported " + batch.grades + " grades (" + batch.created.size() + " new students)");
+        } catch (IOException | RuntimeException e) {
+            batch.rollBack();
+            throw e;
+        } finally {
+            endGroup(group);
+        }
+        pushUndo(g -> batch.rollBack(), batch.estimatedBytes(), List.of());
+        return batch.grades;
+    }
+
+    /**
+     * Streams every student's grades out as CSV or TSV rows, one row per grade
+     * and a name-only row for students without grades.
+     *
+     * @return the number of rows written, not counting the header
+     */
+    public long exportGrades(WritableByteChannel out, char delimiter) throws IOException {
+        var writer = csv();
+        var categories = new byte[categoryNames.size()][];
+        long rows = 0;
+        writer.beginWrite(out, delimiter);
+        for (var entry : gradesByStudent.entrySet()) {
+            var name = GradeCsv.encodeField(entry.getKey(), delimiter);
+            var grades = (StudentGrades) entry.getValue();
             if (grades.isEmpty()) {
+                writer.writeRow(out, name, -1, null, delimiter);
+                rows++;
                 continue;
             }
-            for (int grade : grades) {
-                classAverage += grade;
-                numGrades++;
+            for (int i = 0; i < grades.size(); i++) {
+                int category = grades.categoryAt(i);
+                if (categories[category] == null) {
+                    categories[category] = GradeCsv.encodeField(categoryNames.get(category), delimiter);
+                }
+                writer.writeRow(out, name, grades.get(i), categories[category], delimiter);
+                rows++;
             }
         }
-        if (classAverage == 0.0) {
-            return Optional.empty();
+        writer.flush(out);
+        log("Exported " + rows + " rows");
+        return rows;
+    }
+
+    /**
+     * Streams one report line per student (grades, curved average and letter
+     * grade) to a channel through a reused direct buffer.
+     *
+     * In {@link ReportOrder#UNSORTED} order the students are written as the map
+     * is walked, so memory use does not depend on class size. Sorting needs
+     * arrays of name references, plus a long per student to order by average;
+     * no per-student objects are created either way.
+     *
+     * @return the number of students written
+     */
+    public long reportAll(WritableByteChannel out, ReportOrder order) throws IOException {
+        if (reportWriter == null) {
+            reportWriter = new ReportWriter();
+        }
+        var writer = reportWriter;
+        writer.begin(out);
+        if (order == ReportOrder.UNSORTED) {
+            for (var entry : gradesByStudent.entrySet()) {
+                var grades = (StudentGrades) entry.getValue();
+                var average = curvedAverage(grades);
+                writer.writeStudent(entry.getKey(), grades, average, letterOrNull(average));
+            }
+        } else {
+            var names = gradesByStudent.keySet().toArray(new String[0]);
+            Arrays.sort(names);
+            if (order == ReportOrder.AVERAGE) {
+                sortByAverage(names);
+            }
+            for (var name : names) {
+                var grades = (StudentGrades) gradesByStudent.get(name);
+                var average = curvedAverage(grades);
+                writer.writeStudent(name, grades, average, letterOrNull(average));
+            }
+        }
+        writer.finish();
+        log("Reported " + gradesByStudent.size() + " students");
+        return gradesByStudent.size();
+    }
+
+    /**
+     * Reorders names (already sorted by name) by descending average. Each key
+     * packs the negated average bits above the name's position, so one
+     * primitive sort orders by average and breaks ties by name.
+     */
+    private void sortByAverage(String[] names) {
+        var keys = new long[names.length];
+        for (int i = 0; i < names.length; i++) {
+            var average = curvedAverage((StudentGrades) gradesByStudent.get(names[i]));
+            long rank = Double.isNaN(average) ? Integer.MAX_VALUE
+                    : Math.round((GradeStats.MAX_GRADE - average) * 1_000_000);
+            keys[i] = rank << 32 | i;
+        }
+        Arrays.sort(keys);
+        var sorted = names.clone();
+        for (int i = 0; i < keys.length; i++) {
+            names[i] = sorted[(int) keys[i]];
+        }
+    }
+
+    private String letterOrNull(double average) {
+        return Double.isNaN(average) ? null : evaluator.letterFor(average);
+    }
+
+    private GradeCsv csv() {
+        if (csv == null) {
+            csv = new GradeCsv();
+        }
+        return csv;
+    }
+
+    /**
+     * Grades applied by one import, kept so the import can be undone as a unit.
+     */
+    private final class ImportBatch {
+        private final Map<String, ImportedStudent> students = new LinkedHashMap<>();
+        private final List<String> created = new ArrayList<>();
+        private long grades;
+        private String lastCategory;
+        private int lastCategoryIndex;
+
+        void apply(String name, int grade, String category) {
+            var imported = students.get(name);
+            if (imported == null) {
+                var student = findMutableStudent(name).orElse(null);
+                if (student == null) {
+                    checkBudgetFor(name);
+                    student = newStudent();
+                    gradesByStudent.put(name, student);
+                    memory.studentBytes += MemoryAccount.student(name, student);
+                    sketch.addStudentName(name);
+                    if (replication != null) {
+                        replication.studentAdded(name);
+                    }
+                    created.add(name);
+                }
+                imported = new ImportedStudent(student);
+                students.put(name, imported);
+            }
+            if (grade < 0) {
+                return;
+            }
+            if (!category.equals(lastCategory)) {
+                lastCategoryIndex = categoryIndex(category);
+                lastCategory = category;
+            }
+            appendGrade(name, imported.grades, grade, lastCategoryIndex);
+            imported.added++;
+            grades++;
+        }
+
+        void rollBack() {
+            for (var entry : students.entrySet()) {
+                // Looked up again: the student may have been packed since the import
+                var student = findMutableStudent(entry.getKey()).orElse(null);
+                for (int i = 0; student != null && i < entry.getValue().added; i++) {
+                    dropLastGrade(entry.getKey(), student);
+                }
+            }
+            for (var name : created) {
+                discardStudent(name);
+            }
+        }
+
+        long estimatedBytes() {
+            long bytes = 64 + (MemoryAccount.MAP_ENTRY_BYTES + 32) * students.size() + 16 + 4L * created.size();
+            for (var name : students.keySet()) {
+                bytes += MemoryAccount.string(name);
+            }
+            return bytes;
+        }
+    }
+
+    private static final class ImportedStudent {
+        private final StudentGrades grades;
+        private int added;
+
+        ImportedStudent(StudentGrades grades) {
+            this.grades = grades;
+        }
+    }
+
+    /**
+     * Freezes the current term as an {@link ArchivedTerm} and starts an empty one, in O(1).
+     *
+     * The students, their storage, the sketch and the curve move to the archive,
+     * which compacts them in the background. The undo stack and activity log are
+     * dropped, since nothing in a finished term can be undone. The grading scheme,
+     * watches and audit log carry over; the new term starts uncurved and reaches
+     * followers as a fresh snapshot.
+     *
+     * @return false if a term with that name was already archived
+     * @throws IllegalArgumentException if the name is blank
+     */
+    public boolean archiveTerm(String term) {
+        if (term == null || term.isBlank()) {
+            throw new IllegalArgumentException("Term name must not be blank");
+        }
+        if (archivedTerms.containsKey(term)) {
+            return false;
+        }
+        var students = gradesByStudent.size();
+        archivedTerms.put(term, ArchivedTerm.freeze(term, gradesByStudent, gradingScheme, evaluator,
+                curveScale, curveOffset, sketch));
+        gradesByStudent = new HashMap<>();
+        undoStack = new ArrayDeque<>();
+        activityLog = new LinkedList<>();
+        memory.reset();
+        sketch = new GradeSketch();
+        store = GradeStore.create(storage);
+        curveScale = 1.0;
+        curveOffset = 0.0;
+        watches.clearStudents();
+        if (replication != null) {
+            writeSnapshot();
+        }
+        log("Archived term " + term + " with " + students + " students");
+        return true;
+    }
+
+    public Optional<ArchivedTerm> archivedTerm(String term) {
+        return Optional.ofNullable(archivedTerms.get(term));
+    }
+
+    /**
+     * Every archived term, oldest first.
+     */
+    public List<ArchivedTerm> archivedTerms() {
+        return List.copyOf(archivedTerms.values());
+    }
+
+    /**
+     * Starts a transaction whose changes stay private until {@link Transaction#commit()}.
+     */
+    public Transaction begin() {
+        return new Transaction(this);
+    }
+
+    /**
+     * Returns the student's current version, or {@link Transaction#ABSENT} if there is no such student.
+     */
+    long versionOf(String name) {
+        var grades = (StudentGrades) gradesByStudent.get(name);
+        return grades == null ? Transaction.ABSENT : grades.version();
+    }
+
+    /**
+     * Validates a transaction's read versions and, if none changed, applies its
+     * writes and folds their undo actions into a single undo step.
+     *
+     * Categories and the memory budget are checked before anything is applied.
+     * Should a write still fail, the ones already applied are undone before
+     * the exception is rethrown.
+     */
+    boolean commit(Map<String, Long> readVersions, Transaction writes) {
+        for (var entry : readVersions.entrySet()) {
+            if (versionOf(entry.getKey()) != entry.getValue()) {
+                log("Transaction conflicted on " + entry.getKey());
+                return false;
+            }
+        }
+        if (writes.addsStudents()) {
+            checkBudgetFor(null);
+        }
+        for (var category : writes.gradeCategories()) {
+            categoryIndex(category);
+        }
+        int depth = undoStack.size();
+        var group = beginGroup();
+        try {
+            undoPinned = true;
+            try {
+                writes.applyTo(this);
+            } catch (RuntimeException e) {
+                while (undoStack.size() > depth) {
+                    popUndo().undo(this);
+                }
+                log("Rolled back transaction: " + e.getMessage());
+                throw e;
+            } finally {
+                undoPinned = false;
+            }
+            log("Committed transaction with " + writes.size() + " changes");
+        } finally {
+            endGroup(group);
+        }
+        var steps = new ArrayList<UndoAction>();
+        var removed = new ArrayList<StudentGrades>();
+        long retained = 0;
+        while (undoStack.size() > depth) {
+            var step = popUndo();
+            steps.add(step);
+            retained += undoBytes(step);
+            if (step instanceof RetainingUndo retaining) {
+                removed.addAll(retaining.students());
+            }
+        }
+        if (!steps.isEmpty()) {
+            pushUndo(g -> {
+                for (var step : steps) {
+                    step.undo(g);
+                }
+            }, retained, removed);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a student whose undo removes it again, so that undoing a transaction
+     * that both removed and re-added a student restores the original.
+     */
+    boolean addStudentInTransaction(String name) {
+        if (!insertStudent(name)) {
+            return false;
+        }
+        pushUndo(g -> g.discardStudent(name));
+        return true;
+    }
+
+    /**
+     * Removes a student for good, without recording an undo action, for
+     * undoing a transaction that added it.
+     */
+    private void discardStudent(String name) {
+        var grades = (StudentGrades) gradesByStudent.remove(name);
+        if (grades != null) {
+            memory.studentBytes -= MemoryAccount.student(name, grades);
+            sketchStudent(grades, false);
+            watches.forget(name);
+            if (replication != null) {
+                replication.studentRemoved(name);
+            }
+            grades.release();
+        }
+    }
+
+    /**
+     * Sends every activity log entry from now on to a durable audit log as
+     * well, or stops doing so when given null. The caller still owns the audit
+     * log and closes it.
+     */
+    public void setAuditLog(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
+    private void log(String entry) {
+        addLogEntry(entry);
+        enforceBudget();
+        if (auditLog != null) {
+            auditLog.append(entry);
+        }
+        if (replication != null) {
+            replication.logged(entry);
+            if (replication.snapshotDue()) {
+                writeSnapshot();
+            }
+        }
+    }
+
+    /**
+     * Starts recording every change into a replication log, beginning with a
+     * snapshot of the current state (see {@link ReplicationLeader}).
+     */
+    void replicateTo(ReplicationLog log) {
+        replication = log;
+        if (log != null) {
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * Opens a replication group, so followers apply the changes up to
+     * {@link #endGroup(ReplicationLog)} together.
+     *
+     * @return the log the group was opened in, or null when not replicating
+     */
+    private ReplicationLog beginGroup() {
+        var log = replication;
+        if (log != null) {
+            log.beginGroup();
+        }
+        return log;
+    }
+
+    private static void endGroup(ReplicationLog log) {
+        if (log != null) {
+            log.endGroup();
+        }
+    }
+
+    private void writeSnapshot() {
+        replication.beginSnapshot();
+        replication.schemeSet(gradingScheme);
+        replication.curveSet(curveScale, curveOffset);
+        replication.trendWindowSet(trendWindow);
+        for (var entry : gradesByStudent.entrySet()) {
+            replicateStudent(entry.getKey(), (StudentGrades) entry.getValue());
+        }
+        var lines = activityLog.listIterator(Math.min(activityLog.size(), ReplicationLog.SNAPSHOT_LOG_LINES));
+        while (lines.hasPrevious()) {
+            replication.logged(lines.previous());
+        }
+        replication.endSnapshot();
+    }
+
+    private void replicateStudent(String name, StudentGrades grades) {
+        replication.studentAdded(name);
+        for (int i = 0; i < grades.size(); i++) {
+            replication.gradeAdded(name, grades.get(i), categoryNames.get(grades.categoryAt(i)));
+        }
+    }
+
+    /**
+     * Applies one entry from a leader's replication log (see {@link ReplicationFollower}).
+     * Nothing is pushed on the undo stack and only LOGGED entries reach the activity log.
+     */
+    void applyReplicated(ByteBuffer entry) {
+        var kind = entry.get();
+        switch (kind) {
+            case ReplicationLog.STUDENT_ADDED -> {
+                var name = ReplicationLog.readString(entry);
+                var grades = newStudent();
+                if (gradesByStudent.putIfAbsent(name, grades) == null) {
+                    memory.studentBytes += MemoryAccount.student(name, grades);
+                    sketch.addStudentName(name);
+                    if (replication != null) {
+                        replication.studentAdded(name);
+                    }
+                }
+            }
+            case ReplicationLog.STUDENT_REMOVED -> discardStudent(ReplicationLog.readString(entry));
+            case ReplicationLog.GRADE_ADDED -> {
+                var name = ReplicationLog.readString(entry);
+                int grade = entry.get();
+                var category = categoryIndex(ReplicationLog.readString(entry));
+                findMutableStudent(name).ifPresent(grades -> appendGrade(name, grades, grade, category));
+            }
+            case ReplicationLog.GRADE_DROPPED -> {
+                var name = ReplicationLog.readString(entry);
+                findMutableStudent(name).filter(grades -> !grades.isEmpty())
+                        .ifPresent(grades -> dropLastGrade(name, grades));
+            }
+            case ReplicationLog.SCHEME_SET -> applyScheme(GradingScheme.parse(ReplicationLog.readString(entry)));
+            case ReplicationLog.CURVE_SET -> restoreCurve(entry.getDouble(), entry.getDouble());
+            case ReplicationLog.TREND_WINDOW_SET -> restoreTrendWindow(entry.getInt());
+            case ReplicationLog.LOGGED -> {
+                var line = ReplicationLog.readString(entry);
+                addLogEntry(line);
+                if (replication != null) {
+                    replication.logged(line);
+                }
+            }
+            case ReplicationLog.RESET -> {
+                for (var grades : gradesByStudent.values()) {
+                    ((StudentGrades) grades).release();
+                }
+                gradesByStudent.clear();
+                sketch.clear();
+                watches.clearStudents();
+                while (!undoStack.isEmpty()) {
+                    dropUndo(undoStack.removeLast());
+                }
+                activityLog.clear();
+                memory.reset();
+                restoreCurve(1.0, 0.0);
+                restoreTrendWindow(GradeWindow.DEFAULT_LENGTH);
+                applyScheme(GradingScheme.standard());
+            }
+            default -> throw new IllegalArgumentException("Unknown replication entry " + kind);
         }
-        return Optional.of(classAverage/numGrades);
     }
 
     public boolean undo() {
+        var group = beginGroup();
         try {
-            undoStack.pop().undo(this);
-            activityLog.addFirst("Undo");
+            popUndo().undo(this);
+            log("Undo");
             return true;
         } catch (NoSuchElementException e) {
             return false;
+        } finally {
+            endGroup(group);
+        }
+    }
+
+    /**
+     * Caps the estimated heap of this term's students, undo history,
+     * activity log and dedupe window (see {@link #memoryReport()});
+     * {@link Long#MAX_VALUE}, the default, means no cap. The dedupe window is
+     * never shed, but counts against the cap.
+     *
+     * While over budget, each change first trims the oldest activity log
+     * entries, keeping the newest 10, then drops the oldest
+     * undo steps, keeping the newest. If that is not enough, new students are
+     * refused. Grades can still be added to existing students.
+     *
+     * @throws IllegalArgumentException if bytes is not positive
+     */
+    public void setMemoryBudget(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + bytes);
+        }
+        memoryBudget = bytes;
+        enforceBudget();
+    }
+
+    /**
+     * Stops (or resumes) keeping undo steps and activity log entries, for a
+     * gradebook nobody will call {@link #undo()} or read the log of, such as a
+     * partition. What is already kept is dropped. Audit and replication logs
+     * still see every entry, and a transaction can still roll itself back.
+     */
+    void keepHistory(boolean keep) {
+        keepsHistory = keep;
+        if (!keep) {
+            while (!undoStack.isEmpty()) {
+                dropUndo(undoStack.removeLast());
+            }
+            activityLog.clear();
+            memory.logBytes = 0;
+        }
+    }
+
+    /**
+     * Estimated heap per structure, kept up to date by every change, so this is O(1).
+     */
+    public MemoryReport memoryReport() {
+        long offHeap = store instanceof OffHeapGradeStore offHeapStore ? offHeapStore.reservedBytes() : 0;
+        return new MemoryReport(gradesByStudent.size(), memory.studentBytes, undoStack.size(), memory.undoBytes,
+                activityLog.size(), memory.logBytes, memory.dedupeBytes, offHeap, memoryBudget,
+                memory.trimmedLogEntries, memory.droppedUndoEntries, memory.rejectedStudents);
+    }
+
+    /**
+     * An undo step that also keeps other data alive, such as a removed
+     * student's grades. Those students are released if the step is dropped.
+     */
+    private record RetainingUndo(UndoAction action, long retainedBytes, List<StudentGrades> students)
+            implements UndoAction {
+        @Override
+        public void undo(Gradebook gradebook) {
+            action.undo(gradebook);
+        }
+    }
+
+    private void pushUndo(UndoAction action) {
+        if (!keepsHistory && !undoPinned) {
+            dropUndo(action);
+            return;
+        }
+        undoStack.push(action);
+        memory.undoBytes += undoBytes(action);
+        enforceBudget();
+    }
+
+    private void pushUndo(UndoAction action, long retainedBytes, List<StudentGrades> students) {
+        pushUndo(new RetainingUndo(action, retainedBytes, students));
+    }
+
+    private UndoAction popUndo() {
+        var action = undoStack.pop();
+        memory.undoBytes -= undoBytes(action);
+        return action;
+    }
+
+    /**
+     * Forgets an undo step that will never run.
+     */
+    private void dropUndo(UndoAction action) {
+        memory.undoBytes -= undoBytes(action);
+        if (action instanceof RetainingUndo retaining) {
+            for (var grades : retaining.students()) {
+                grades.release();
+            }
+        }
+    }
+
+    private static long undoBytes(UndoAction action) {
+        return action instanceof RetainingUndo retaining
+                ? MemoryAccount.UNDO_ENTRY_BYTES + retaining.retainedBytes()
+                : MemoryAccount.UNDO_ENTRY_BYTES;
+    }
+
+    private void addLogEntry(String entry) {
+        if (!keepsHistory) {
+            return;
+        }
+        activityLog.addFirst(entry);
+        memory.logBytes += MemoryAccount.logEntry(entry);
+    }
+
+    /**
+     * Sheds the oldest activity log entries, then the oldest undo steps, until back within budget.
+     */
+    private void enforceBudget() {
+        while (memory.totalBytes() > memoryBudget && activityLog.size() > MIN_LOG_ENTRIES) {
+            memory.logBytes -= MemoryAccount.logEntry(activityLog.removeLast());
+            memory.trimmedLogEntries++;
+        }
+        while (memory.totalBytes() > memoryBudget && undoStack.size() > 1 && !undoPinned) {
+            dropUndo(undoStack.removeLast());
+            memory.droppedUndoEntries++;
+        }
+    }
+
+    /**
+     * @param name the student about to be added, or null for a transaction's new students
+     */
+    private void checkBudgetFor(String name) {
+        enforceBudget();
+        if (memory.totalBytes() > memoryBudget) {
+            memory.rejectedStudents++;
+            throw new IllegalStateException("Memory budget of " + memoryBudget + " bytes is used up ("
+                    + memory.totalBytes() + " bytes in use); not adding "
+                    + (name == null ? "the transaction's new students" : "student " + name));
         }
     }
 
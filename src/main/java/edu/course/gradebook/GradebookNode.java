@@ -0,0 +1,63 @@
+package edu.course.gradebook;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * One partition of a {@link PartitionedGradebook}: a gradebook holding the
+ * students whose names hash to it.
+ *
+ * {@link #local(String)} runs a partition in this JVM. A partition in
+ * another JVM implements the same operations over its transport of choice;
+ * the coordinator only ever talks to this interface.
+ */
+public interface GradebookNode {
+
+    /**
+     * Creates a partition backed by a gradebook in this JVM.
+     */
+    static GradebookNode local(String id) {
+        return new LocalGradebookNode(id, new Gradebook());
+    }
+
+    /**
+     * A stable name for this node; where students live is decided by hashing it together with their names.
+     */
+    String id();
+
+    boolean addStudent(String name);
+
+    boolean addGrade(String name, String category, int grade);
+
+    boolean removeStudent(String name);
+
+    boolean summarize(String name, StudentSummary into);
+
+    void setGradingScheme(GradingScheme scheme);
+
+    /**
+     * Number and sum of every raw grade on this node, for merging into a class average.
+     */
+    GradeTotals totals();
+
+    Optional<GradeDistribution> classDistribution();
+
+    Map<String, Integer> letterDistribution();
+
+    List<String> studentNames();
+
+    /**
+     * Removes a student so it can be handed to another node.
+     *
+     * @return empty if there is no such student
+     */
+    Optional<MovedStudent> takeStudent(String name);
+
+    /**
+     * Adds a student taken from another node, with all its grades.
+     *
+     * @return false if a student with that name already exists here
+     */
+    boolean putStudent(MovedStudent student);
+}
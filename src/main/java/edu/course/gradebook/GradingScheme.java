@@ -0,0 +1,166 @@
+package edu.course.gradebook;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Describes how a student's grades turn into an average and a letter grade.
+ *
+ * A scheme with no categories uses the plain average of every grade.
+ * Otherwise each category contributes its own average (after dropping its
+ * lowest and highest grades) weighted by the category's weight; grades filed under a
+ * category the scheme does not mention are ignored, and categories with no
+ * remaining grades are left out of the weighting.
+ *
+ * Cutoffs are checked from the highest minimum down. The lowest cutoff also
+ * covers every average below it.
+ *
+ * @param categories weighted categories, may be empty
+ * @param cutoffs letter cutoffs, at least one
+ */
+public record GradingScheme(List<Category> categories, List<Cutoff> cutoffs) {
+
+    public static final String DEFAULT_CATEGORY = "default";
+
+    /**
+     * A weighted grade category.
+     *
+     * @param name category name used with ADD_GRADE
+     * @param weight relative weight, must be positive
+     * @param dropLowest number of lowest grades in this category to ignore
+     * @param dropHighest number of highest grades in this category to ignore
+     */
+    public record Category(String name, double weight, int dropLowest, int dropHighest) {
+        public Category(String name, double weight, int dropLowest) {
+            this(name, weight, dropLowest, 0);
+        }
+
+        public Category {
+            if (name == null || name.isBlank()) {
+                throw new IllegalArgumentException("Category name must not be blank");
+            }
+            if (!(weight > 0)) {
+                throw new IllegalArgumentException("Category weight must be positive: " + name);
+            }
+            if (dropLowest < 0 || dropHighest < 0) {
+                throw new IllegalArgumentException("Drop count must not be negative: " + name);
+            }
+        }
+    }
+
+    /**
+     * The minimum average needed for a letter grade.
+     */
+    public record Cutoff(String letter, double minimum) {
+        public Cutoff {
+            if (letter == null || letter.isBlank()) {
+                throw new IllegalArgumentException("Cutoff letter must not be blank");
+            }
+        }
+    }
+
+    public GradingScheme {
+        categories = List.copyOf(categories);
+        if (cutoffs.isEmpty()) {
+            throw new IllegalArgumentException("A grading scheme needs at least one cutoff");
+        }
+        var sorted = new ArrayList<>(cutoffs);
+        sorted.sort(Comparator.comparingDouble(Cutoff::minimum).reversed());
+        cutoffs = List.copyOf(sorted);
+        for (int i = 0; i < categories.size(); i++) {
+            for (int j = 0; j < i; j++) {
+                if (categories.get(i).name().equals(categories.get(j).name())) {
+                    throw new IllegalArgumentException("Duplicate category: " + categories.get(i).name());
+                }
+            }
+        }
+    }
+
+    /**
+     * The plain-average, 90/80/70/60 scheme every gradebook starts with.
+     */
+    public static GradingScheme standard() {
+        return new GradingScheme(List.of(), standardCutoffs());
+    }
+
+    private static List<Cutoff> standardCutoffs() {
+        return List.of(new Cutoff("A", 90), new Cutoff("B", 80), new Cutoff("C", 70),
+                new Cutoff("D", 60), new Cutoff("F", 0));
+    }
+
+    /**
+     * Parses a scheme from the SCHEME command syntax.
+     *
+     * Examples:
+     * - "homework=30/1 exams=70" weights homework 30 (dropping its lowest grade) and exams 70
+     * - "quiz=20/2/1" drops the two lowest and the single highest quiz grade
+     * - "A>=93 B>=85 C>=75 D>=65 F>=0" replaces the cutoffs and keeps the plain average
+     * - "DEFAULT" returns {@link #standard()}
+     *
+     * When only categories are given the standard cutoffs are used.
+     *
+     * @throws IllegalArgumentException if the text cannot be parsed
+     */
+    public static GradingScheme parse(String spec) {
+        if (spec == null || spec.isBlank()) {
+            throw new IllegalArgumentException("Empty grading scheme");
+        }
+        if (spec.trim().equalsIgnoreCase("DEFAULT")) {
+            return standard();
+        }
+        var categories = new ArrayList<Category>();
+        var cutoffs = new ArrayList<Cutoff>();
+        for (var token : spec.trim().split("\\s+")) {
+            try {
+                int cutoffAt = token.indexOf(">=");
+                int categoryAt = token.indexOf('=');
+                if (cutoffAt > 0) {
+                    cutoffs.add(new Cutoff(token.substring(0, cutoffAt), Double.parseDouble(token.substring(cutoffAt + 2))));
+                } else if (categoryAt > 0) {
+                    var name = token.substring(0, categoryAt);
+                    var rule = token.substring(categoryAt + 1);
+                    var fields = rule.split("/");
+                    if (fields.length > 3) {
+                        throw new IllegalArgumentException("Invalid scheme entry: " + token);
+                    }
+                    var weight = Double.parseDouble(fields[0]);
+                    var dropLowest = fields.length > 1 ? Integer.parseInt(fields[1]) : 0;
+                    var dropHighest = fields.length > 2 ? Integer.parseInt(fields[2]) : 0;
+                    categories.add(new Category(name, weight, dropLowest, dropHighest));
+                } else {
+                    throw new IllegalArgumentException("Invalid scheme entry: " + token);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number in scheme entry: " + token);
+            }
+        }
+        return new GradingScheme(categories, cutoffs.isEmpty() ? standardCutoffs() : cutoffs);
+    }
+
+    /**
+     * Formats the scheme in the syntax accepted by {@link #parse(String)}.
+     */
+    @Override
+    public String toString() {
+        var text = new StringBuilder();
+        for (var category : categories) {
+            text.append(category.name()).append('=').append(format(category.weight()));
+            if (category.dropLowest() > 0 || category.dropHighest() > 0) {
+                text.append('/').append(category.dropLowest());
+            }
+            if (category.dropHighest() > 0) {
+                text.append('/').append(category.dropHighest());
+            }
+            text.append(' ');
+        }
+        for (var cutoff : cutoffs) {
+            text.append(cutoff.letter()).append(">=").append(format(cutoff.minimum())).append(' ');
+        }
+        return text.toString().trim();
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+    }
+}
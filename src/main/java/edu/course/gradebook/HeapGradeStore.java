@@ -0,0 +1,12 @@
+package edu.course.gradebook;
+
+/**
+ * The default store: every student's grades live in an on-heap {@link GradeList}.
+ */
+final class HeapGradeStore implements GradeStore {
+
+    @Override
+    public StudentGrades newStudent(int windowLength) {
+        return new GradeList(windowLength);
+    }
+}
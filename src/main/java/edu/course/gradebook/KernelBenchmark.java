@@ -0,0 +1,141 @@
+package edu.course.gradebook;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times each {@link GradeKernels} implementation on the two shapes of work
+ * STATS gives them: the moments of one student's distribution, however many
+ * grades that student has, and a whole-class scan that accumulates every
+ * student's counting array and then takes the moments of the total. Class
+ * scans run over heap arrays (as with heap storage) and direct buffers (as
+ * with off-heap storage).
+ *
+ * Each measurement is repeated after warm-up rounds and the median is
+ * printed. Time each implementation in its own JVM, since once the JIT has
+ * seen both at the same call sites neither is compiled as it would be in a
+ * gradebook, which only ever uses one. The vector kernels need the
+ * incubating module:
+ *
+ * <pre>
+ * java -cp target/classes edu.course.gradebook.KernelBenchmark --kernels=scalar
+ * java --add-modules jdk.incubator.vector -cp target/classes edu.course.gradebook.KernelBenchmark --kernels=vector
+ *         [--students=N] [--rounds=N] [--seed=N]
+ * </pre>
+ */
+public final class KernelBenchmark {
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int MOMENTS_CALLS = 1_000_000;
+
+    private long checksum;
+
+    private KernelBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int students = 100_000;
+        int rounds = 10;
+        long seed = 32;
+        var which = "scalar";
+        for (var arg : args) {
+            if (arg.equals("--kernels=scalar") || arg.equals("--kernels=vector")) {
+                which = arg.substring("--kernels=".length());
+            } else if (arg.startsWith("--students=")) {
+                students = Integer.parseInt(arg.substring("--students=".length()));
+            } else if (arg.startsWith("--rounds=")) {
+                rounds = Integer.parseInt(arg.substring("--rounds=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else {
+                System.out.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        if (which.equals("vector") && ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            System.out.println("The vector kernels need --add-modules jdk.incubator.vector");
+            return;
+        }
+        var kernel = which.equals("vector") ? vectorKernels() : new ScalarGradeKernels();
+        new KernelBenchmark().run(kernel, students, rounds, new Random(seed));
+    }
+
+    private void run(GradeKernels kernel, int students, int rounds, Random random) {
+        var heap = new IntBuffer[students];
+        var direct = new IntBuffer[students];
+        for (int s = 0; s < students; s++) {
+            var counts = new int[GradeKernels.HISTOGRAM_LENGTH];
+            for (int g = 0; g < 50; g++) {
+                counts[random.nextInt(counts.length)]++;
+            }
+            heap[s] = IntBuffer.wrap(counts);
+            direct[s] = ByteBuffer.allocateDirect(4 * counts.length).asIntBuffer().put(counts).clear();
+        }
+        // One student with a million grades; a counting array costs the same however many there are
+        var large = new int[GradeKernels.HISTOGRAM_LENGTH];
+        for (int g = 0; g < 1_000_000; g++) {
+            large[random.nextInt(large.length)]++;
+        }
+
+        System.out.printf("%d students, median of %d rounds%n", students, rounds);
+        System.out.printf("%-20s %22s %22s %22s%n", "kernels", "moments (ns/student)", "class scan heap (ms)",
+                "class scan direct (ms)");
+        double moments = median(rounds, () -> moments(kernel, large)) / MOMENTS_CALLS;
+        double scanHeap = median(rounds, () -> classScan(kernel, heap)) / 1e6;
+        double scanDirect = median(rounds, () -> classScan(kernel, direct)) / 1e6;
+        System.out.printf("%-20s %22.1f %22.2f %22.2f%n", kernel.name(), moments, scanHeap, scanDirect);
+        if (checksum == 42) {
+            System.out.println();
+        }
+    }
+
+    private long moments(GradeKernels kernel, int[] histogram) {
+        var result = new double[3];
+        long start = System.nanoTime();
+        for (int i = 0; i < MOMENTS_CALLS; i++) {
+            kernel.moments(histogram, result);
+            checksum += (long) result[1];
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long classScan(GradeKernels kernel, IntBuffer[] histograms) {
+        var total = new int[GradeKernels.HISTOGRAM_LENGTH];
+        var result = new double[3];
+        long start = System.nanoTime();
+        for (var histogram : histograms) {
+            kernel.accumulate(total, histogram);
+        }
+        kernel.moments(total, result);
+        long elapsed = System.nanoTime() - start;
+        checksum += (long) result[2];
+        return elapsed;
+    }
+
+    private interface Measurement {
+        long nanos();
+    }
+
+    private static double median(int rounds, Measurement measurement) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            measurement.nanos();
+        }
+        var times = new long[rounds];
+        for (int i = 0; i < rounds; i++) {
+            times[i] = measurement.nanos();
+        }
+        Arrays.sort(times);
+        return times[rounds / 2];
+    }
+
+    private static GradeKernels vectorKernels() {
+        try {
+            // Loaded reflectively, as in GradeKernels.create(), so this class links without the module
+            return (GradeKernels) Class.forName("edu.course.gradebook.VectorGradeKernels")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Vector kernels are not on the class path", e);
+        }
+    }
+}
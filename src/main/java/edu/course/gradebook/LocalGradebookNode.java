@@ -0,0 +1,85 @@
+package edu.course.gradebook;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A {@link GradebookNode} backed by a gradebook in this JVM.
+ *
+ * Every method is synchronized, so the coordinator may query several nodes
+ * at once while each gradebook still sees one caller at a time. The
+ * gradebook keeps no undo steps or activity log, since the coordinator never
+ * undoes or reads them; otherwise they would grow with every write, and the
+ * undo steps of students moved away would outlive them.
+ */
+final class LocalGradebookNode implements GradebookNode {
+    private final String id;
+    private final Gradebook gradebook;
+
+    LocalGradebookNode(String id, Gradebook gradebook) {
+        this.id = id;
+        this.gradebook = gradebook;
+        gradebook.keepHistory(false);
+    }
+
+    @Override
+    public String id() {
+        return id;
+    }
+
+    @Override
+    public synchronized boolean addStudent(String name) {
+        return gradebook.addStudent(name);
+    }
+
+    @Override
+    public synchronized boolean addGrade(String name, String category, int grade) {
+        return gradebook.addGrade(name, category, grade);
+    }
+
+    @Override
+    public synchronized boolean removeStudent(String name) {
+        return gradebook.removeStudent(name);
+    }
+
+    @Override
+    public synchronized boolean summarize(String name, StudentSummary into) {
+        return gradebook.summarize(name, into);
+    }
+
+    @Override
+    public synchronized void setGradingScheme(GradingScheme scheme) {
+        gradebook.setGradingScheme(scheme);
+    }
+
+    @Override
+    public synchronized GradeTotals totals() {
+        return gradebook.totals();
+    }
+
+    @Override
+    public synchronized Optional<GradeDistribution> classDistribution() {
+        return gradebook.classDistribution();
+    }
+
+    @Override
+    public synchronized Map<String, Integer> letterDistribution() {
+        return gradebook.letterDistribution();
+    }
+
+    @Override
+    public synchronized List<String> studentNames() {
+        return gradebook.studentNames();
+    }
+
+    @Override
+    public synchronized Optional<MovedStudent> takeStudent(String name) {
+        return gradebook.takeStudent(name);
+    }
+
+    @Override
+    public synchronized boolean putStudent(MovedStudent student) {
+        return gradebook.putStudent(student);
+    }
+}
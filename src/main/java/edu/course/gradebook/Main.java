@@ -1,5 +1,11 @@
 package edu.course.gradebook;
 
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.Scanner;
 
 /**
@@ -12,18 +18,236 @@ import java.util.Scanner;
  * - Integration with Gradebook methods
  */
 public class Main {
+    private static final long AUDIT_FILE_BYTES = 64L << 20;
+    private static final Duration AUDIT_FLUSH_INTERVAL = Duration.ofMillis(200);
+    private static final int ALERT_QUEUE_CAPACITY = 1024;
+    private static final int MAX_PORT = 65535;
+
     private final Gradebook gradebook;
+    private Transaction transaction;
+    private final StudentSummary summary = new StudentSummary();
+    private final StringBuilder report = new StringBuilder();
+    private TraceWriter trace;
+    private AuditLog auditLog;
+    private ReplicationFollower follower;
+    private ReplicationLeader leader;
+    private AlertDispatcher alerts;
 
     public Main() {
-        this.gradebook = new Gradebook();
+        this(GradeStorage.HEAP);
+    }
+
+    public Main(GradeStorage storage) {
+        this.gradebook = new Gradebook(storage);
+    }
+
+    public Main(GradeStorage storage, Duration coldAfter) {
+        this(storage);
+        gradebook.setColdAfter(coldAfter);
+    }
+
+    /**
+     * Serves read-only commands from a replica; every other command is refused.
+     */
+    public Main(ReplicationFollower follower) {
+        this.gradebook = follower.gradebook();
+        this.follower = follower;
+    }
+
+    /**
+     * Accepts --storage=heap (the default) or --storage=off-heap,
+     * --cold-after=<seconds> to pack students idle that long, and
+     * --protocol=binary to serve {@link BinaryProtocol} frames on stdin/stdout
+     * instead of text commands, --trace=<file> to record every command for
+     * {@link TraceReplay}, --audit=<directory> (with --audit-gzip) to keep
+     * every action in a durable {@link AuditLog}, --replicate=<port> to ship
+     * changes to followers, --follow=<port> (with --max-staleness=<millis>)
+     * to run as a read-only follower of the leader on that port (text
+     * protocol only), and --memory-budget=<megabytes> to cap the gradebook's
+     * estimated heap.
+     */
+    public static void main(String[] args) throws IOException {
+        var storage = GradeStorage.HEAP;
+        var binary = false;
+        Duration coldAfter = null;
+        Path trace = null;
+        Path audit = null;
+        var auditGzip = false;
+        var replicatePort = -1;
+        var followPort = -1;
+        var maxStaleness = Duration.ofSeconds(1);
+        var memoryBudget = Long.MAX_VALUE;
+        for (var arg : args) {
+            if (arg.startsWith("--storage=")) {
+                try {
+                    storage = GradeStorage.fromOption(arg.substring("--storage=".length()));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Unknown option: " + arg + " (expected heap or off-heap)");
+                    return;
+                }
+            } else if (arg.startsWith("--cold-after=")) {
+                long seconds = parseNonNegative(arg.substring("--cold-after=".length()));
+                if (seconds < 0) {
+                    System.out.println("Unknown option: " + arg + " (expected a non-negative number of seconds)");
+                    return;
+                }
+                coldAfter = Duration.ofSeconds(seconds);
+            } else if (arg.startsWith("--trace=")) {
+                trace = Path.of(arg.substring("--trace=".length()));
+            } else if (arg.startsWith("--audit=")) {
+                audit = Path.of(arg.substring("--audit=".length()));
+            } else if (arg.equals("--audit-gzip")) {
+                auditGzip = true;
+            } else if (arg.startsWith("--replicate=")) {
+                long port = parseNonNegative(arg.substring("--replicate=".length()));
+                if (port < 0 || port > MAX_PORT) {
+                    System.out.println("Unknown option: " + arg + " (expected a port from 0 to " + MAX_PORT + ")");
+                    return;
+                }
+                replicatePort = (int) port;
+            } else if (arg.startsWith("--follow=")) {
+                long port = parseNonNegative(arg.substring("--follow=".length()));
+                if (port < 1 || port > MAX_PORT) {
+                    System.out.println("Unknown option: " + arg + " (expected a port from 1 to " + MAX_PORT + ")");
+                    return;
+                }
+                followPort = (int) port;
+            } else if (arg.startsWith("--max-staleness=")) {
+                long millis = parseNonNegative(arg.substring("--max-staleness=".length()));
+                if (millis < 0) {
+                    System.out.println("Unknown option: " + arg + " (expected a non-negative number of milliseconds)");
+                    return;
+                }
+                maxStaleness = Duration.ofMillis(millis);
+            } else if (arg.startsWith("--memory-budget=")) {
+                memoryBudget = parseMegabytes(arg.substring("--memory-budget=".length()));
+                if (memoryBudget <= 0) {
+                    System.out.println("Unknown option: " + arg + " (expected a positive number of megabytes)");
+                    return;
+                }
+            } else if (arg.equals("--protocol=binary")) {
+                binary = true;
+            } else if (!arg.equals("--protocol=text")) {
+                System.out.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        if (followPort >= 0 && replicatePort >= 0) {
+            System.out.println("Unknown option: --replicate (a follower cannot also be a leader)");
+            return;
+        }
+        if (followPort >= 0 && binary) {
+            System.out.println("Unknown option: --protocol=binary (a follower only serves text commands)");
+            return;
+        }
+        var app = followPort >= 0
+                ? new Main(ReplicationFollower.connect(followPort, maxStaleness))
+                : new Main(storage, coldAfter);
+        if (memoryBudget != Long.MAX_VALUE) {
+            if (app.follower != null) {
+                app.follower.setMemoryBudget(memoryBudget);
+            } else {
+                app.gradebook.setMemoryBudget(memoryBudget);
+            }
+        }
+        if (replicatePort >= 0) {
+            app.leader = ReplicationLeader.start(app.gradebook, replicatePort);
+            // Not on stdout, which carries the responses
+            System.err.println("Replicating to followers on port " + app.leader.port());
+        }
+        if (trace != null) {
+            app.recordTrace(trace);
+        }
+        if (audit != null) {
+            app.auditTo(AuditLog.open(audit, AUDIT_FILE_BYTES, AUDIT_FLUSH_INTERVAL, auditGzip));
+        }
+        try {
+            if (binary) {
+                app.runBinary();
+            } else {
+                app.run();
+            }
+        } finally {
+            app.stopTrace();
+            if (app.alerts != null) {
+                app.alerts.close();
+            }
+            if (app.leader != null) {
+                app.leader.close();
+            }
+            if (app.follower != null) {
+                app.follower.close();
+            }
+            if (app.auditLog != null) {
+                app.auditLog.close();
+            }
+        }
+    }
+
+    /**
+     * Parses a non-negative whole number, or returns -1 if it is not one.
+     */
+    private static long parseNonNegative(String value) {
+        try {
+            return Math.max(-1, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Converts a number of megabytes to bytes, or returns -1 if it is not a
+     * number or the bytes would not fit in a long.
+     */
+    private static long parseMegabytes(String megabytes) {
+        try {
+            long value = Long.parseLong(megabytes);
+            return value > Long.MAX_VALUE >> 20 ? -1 : value << 20;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Serves binary protocol frames from stdin, writing responses to stdout, until stdin closes.
+     */
+    public void runBinary() throws IOException {
+        new BinaryProtocol(gradebook).serve(Channels.newChannel(System.in), Channels.newChannel(System.out));
+        System.out.flush();
+    }
+
+    /**
+     * Sends every gradebook action to an audit log, which the caller closes when done.
+     */
+    public void auditTo(AuditLog auditLog) {
+        this.auditLog = auditLog;
+        gradebook.setAuditLog(auditLog);
     }
 
-    public static void main(String[] args) {
-        var app = new Main();
-        app.run();
+    /**
+     * Records every command entered in {@link #run()} to a trace file, replacing it.
+     */
+    public void recordTrace(Path file) throws IOException {
+        trace = new TraceWriter(FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
     }
 
+    /**
+     * Reads commands from stdin until EXIT. The trace, if any, is finished and
+     * pending alerts are delivered however the loop ends.
+     */
     public void run() {
+        try {
+            readCommands();
+        } finally {
+            stopTrace();
+            if (alerts != null) {
+                alerts.close();
+            }
+        }
+    }
+
+    private void readCommands() {
         var scanner = new Scanner(System.in);
 
         mainLoop:
@@ -32,6 +256,8 @@ public class Main {
             var line = scanner.nextLine();
             var cmd = Commands.parse(line);
 
+            recordCommand(cmd, line);
+
             // Print numeric ordinal value of the command
             System.out.println("[" + cmd.ordinal() + "] " + cmd);
 
@@ -40,39 +266,109 @@ public class Main {
             }
 
             if (cmd == Command.UNKNOWN) {
-                System.out.println("Unknown command. Try: ADD_STUDENT, ADD_GRADE, REMOVE_STUDENT, REPORT, CLASS_REPORT, UNDO, LOG, EXIT");
+                System.out.println("Unknown command. Try: ADD_STUDENT, ADD_GRADE, REMOVE_STUDENT, REPORT, CLASS_REPORT, UNDO, LOG, SCHEME, IMPORT, EXPORT, CURVE, STATS, COMPACT, BEGIN, COMMIT, ROLLBACK, REPORT_ALL, TREND, WATCH, ARCHIVE_TERM, TERM_REPORT, MEMORY, EXIT");
                 continue mainLoop;
             }
 
-            // Enhanced switch expression to invoke correct Gradebook method
-            var result = switch (cmd) {
-                case ADD_STUDENT -> handleAddStudent(line);
-                case ADD_GRADE -> handleAddGrade(line);
-                case REMOVE_STUDENT -> handleRemoveStudent(line);
-                case REPORT -> handleReport(line);
-                case CLASS_REPORT -> handleClassReport();
-                case UNDO -> handleUndo();
-                case LOG -> handleLog();
-                default -> {
-                    System.out.println("Command not handled: " + cmd);
-                    yield false;
-                }
-            };
+            if (follower != null && !servesReads(cmd)) {
+                System.out.println("This is a read-only replica; send " + cmd + " to the leader");
+                continue mainLoop;
+            }
+
+            var result = follower == null
+                    ? execute(cmd, line)
+                    : follower.read(replica -> execute(cmd, line)).orElseGet(() -> {
+                        System.out.println("Replica is too far behind the leader; try again shortly");
+                        return false;
+                    });
         }
 
         scanner.close();
         System.out.println("Goodbye!");
     }
 
+    /**
+     * Runs one command against the gradebook.
+     */
+    private boolean execute(Command cmd, String line) {
+        // Enhanced switch expression to invoke correct Gradebook method
+        return switch (cmd) {
+            case ADD_STUDENT -> handleAddStudent(line);
+            case ADD_GRADE -> handleAddGrade(line);
+            case REMOVE_STUDENT -> handleRemoveStudent(line);
+            case REPORT -> handleReport(line);
+            case CLASS_REPORT -> handleClassReport();
+            case UNDO -> handleUndo();
+            case LOG -> handleLog();
+            case SCHEME -> handleScheme(line);
+            case IMPORT -> handleImport(line);
+            case EXPORT -> handleExport(line);
+            case CURVE -> handleCurve(line);
+            case STATS -> handleStats(line);
+            case COMPACT -> handleCompact(line);
+            case BEGIN -> handleBegin();
+            case COMMIT -> handleCommit();
+            case ROLLBACK -> handleRollback();
+            case REPORT_ALL -> handleReportAll(line);
+            case TREND -> handleTrend(line);
+            case WATCH -> handleWatch(line);
+            case ARCHIVE_TERM -> handleArchiveTerm(line);
+            case TERM_REPORT -> handleTermReport(line);
+            case MEMORY -> handleMemory();
+            default -> {
+                System.out.println("Command not handled: " + cmd);
+                yield false;
+            }
+        };
+    }
+
+    private static boolean servesReads(Command cmd) {
+        return switch (cmd) {
+            case REPORT, CLASS_REPORT, LOG, STATS, REPORT_ALL, TREND, MEMORY -> true;
+            default -> false;
+        };
+    }
+
+    private void recordCommand(Command cmd, String line) {
+        if (trace == null) {
+            return;
+        }
+        var parts = line.trim().split("\\s+", 2);
+        try {
+            trace.record(System.nanoTime(), cmd, parts.length > 1 ? parts[1] : "");
+        } catch (IOException e) {
+            System.out.println("Trace recording stopped: " + e.getMessage());
+            stopTrace();
+        }
+    }
+
+    private void stopTrace() {
+        if (trace == null) {
+            return;
+        }
+        try {
+            trace.close();
+        } catch (IOException e) {
+            System.out.println("Could not finish trace: " + e.getMessage());
+        }
+        trace = null;
+    }
+
     private boolean handleAddStudent(String line) {
         var parts = line.trim().split("\\s+", 2);
         if (parts.length < 2) {
             System.out.println("Usage: ADD_STUDENT <name>");
             return false;
         }
-        var success = gradebook.addStudent(parts[1]);
+        boolean success;
+        try {
+            success = transaction != null ? transaction.addStudent(parts[1]) : gradebook.addStudent(parts[1]);
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage());
+            return false;
+        }
         if (success) {
-            System.out.println("Added student: " + parts[1]);
+            System.out.println((transaction != null ? "Pending: added student: " : "Added student: ") + parts[1]);
         } else {
             System.out.println("Student already exists: " + parts[1]);
         }
@@ -80,9 +376,9 @@ public class Main {
     }
 
     private boolean handleAddGrade(String line) {
-        var parts = line.trim().split("\\s+", 3);
+        var parts = line.trim().split("\\s+", 4);
         if (parts.length < 3) {
-            System.out.println("Usage: ADD_GRADE <name> <grade>");
+            System.out.println("Usage: ADD_GRADE <name> <grade> [category]");
             return false;
         }
         try {
@@ -91,9 +387,12 @@ public class Main {
                 System.out.println("Grade must be between 0 and 100");
                 return false;
             }
-            var success = gradebook.addGrade(parts[1], grade);
+            var category = parts.length > 3 ? parts[3] : GradingScheme.DEFAULT_CATEGORY;
+            var success = transaction != null
+                    ? transaction.addGrade(parts[1], category, grade)
+                    : gradebook.addGrade(parts[1], category, grade);
             if (success) {
-                System.out.println("Added grade " + grade + " for " + parts[1]);
+                System.out.println((transaction != null ? "Pending: added grade " : "Added grade ") + grade + " for " + parts[1]);
             } else {
                 System.out.println("Student not found: " + parts[1]);
             }
@@ -101,6 +400,9 @@ public class Main {
         } catch (NumberFormatException e) {
             System.out.println("Invalid grade: " + parts[2]);
             return false;
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return false;
         }
     }
 
@@ -110,9 +412,9 @@ public class Main {
             System.out.println("Usage: REMOVE_STUDENT <name>");
             return false;
         }
-        var success = gradebook.removeStudent(parts[1]);
+        var success = transaction != null ? transaction.removeStudent(parts[1]) : gradebook.removeStudent(parts[1]);
         if (success) {
-            System.out.println("Removed student: " + parts[1]);
+            System.out.println((transaction != null ? "Pending: removed student: " : "Removed student: ") + parts[1]);
         } else {
             System.out.println("Student not found: " + parts[1]);
         }
@@ -126,30 +428,45 @@ public class Main {
             return false;
         }
         var studentName = parts[1];
-        var gradesOpt = gradebook.findStudentGrades(studentName);
-        if (gradesOpt.isEmpty()) {
+        if (!gradebook.summarize(studentName, summary)) {
             System.out.println("Student not found: " + studentName);
             return false;
         }
-        var grades = gradesOpt.get();
-        System.out.println("Report for " + studentName + ":");
-        System.out.println("  Grades: " + grades);
-
-        var avgOpt = gradebook.averageFor(studentName);
-        var letterOpt = gradebook.letterGradeFor(studentName);
+        printSummary(studentName);
+        return true;
+    }
 
-        if (avgOpt.isPresent()) {
-            System.out.printf("  Average: %.2f%n", avgOpt.get());
+    private void printSummary(String studentName) {
+        var out = report;
+        out.setLength(0);
+        out.append("Report for ").append(studentName).append(":\n  Grades: [");
+        for (int i = 0; i < summary.gradeCount(); i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            out.append(summary.grade(i));
+        }
+        out.append("]\n  Average: ");
+        if (summary.hasAverage()) {
+            appendHundredths(out, summary.average());
         } else {
-            System.out.println("  Average: N/A (no grades)");
+            out.append("N/A (no grades)");
         }
+        out.append("\n  Letter Grade: ").append(summary.hasAverage() ? summary.letterGrade() : "N/A");
+        System.out.println(out);
+    }
 
-        if (letterOpt.isPresent()) {
-            System.out.println("  Letter Grade: " + letterOpt.get());
-        } else {
-            System.out.println("  Letter Grade: N/A");
+    /**
+     * Appends a non-negative value rounded half up to two decimals, without going through a Formatter.
+     */
+    private static void appendHundredths(StringBuilder out, double value) {
+        long hundredths = Math.round(value * 100);
+        long fraction = hundredths % 100;
+        out.append(hundredths / 100).append('.');
+        if (fraction < 10) {
+            out.append('0');
         }
-        return true;
+        out.append(fraction);
     }
 
     private boolean handleClassReport() {
@@ -184,4 +501,383 @@ public class Main {
         }
         return !logs.isEmpty();
     }
+
+    private boolean handleScheme(String line) {
+        var parts = line.trim().split("\\s+", 2);
+        if (parts.length < 2) {
+            System.out.println("Grading scheme: " + gradebook.gradingScheme());
+            return true;
+        }
+        try {
+            var scheme = GradingScheme.parse(parts[1]);
+            gradebook.setGradingScheme(scheme);
+            System.out.println("Grading scheme set: " + scheme);
+            return true;
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Usage: SCHEME [DEFAULT | <category>=<weight>[/<lowest>[/<highest>]] ... <letter>>=<minimum> ...]");
+            return false;
+        }
+    }
+
+    private boolean handleImport(String line) {
+        var parts = line.trim().split("\\s+", 2);
+        if (parts.length < 2) {
+            System.out.println("Usage: IMPORT <file.csv|file.tsv>");
+            return false;
+        }
+        try (var in = FileChannel.open(Path.of(parts[1]), StandardOpenOption.READ)) {
+            var grades = gradebook.importGrades(in, GradeCsv.delimiterFor(parts[1]));
+            System.out.println("Imported " + grades + " grades from " + parts[1]);
+            return true;
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            System.out.println("Import failed, nothing was imported: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean handleExport(String line) {
+        var parts = line.trim().split("\\s+", 2);
+        if (parts.length < 2) {
+            System.out.println("Usage: EXPORT <file.csv|file.tsv>");
+            return false;
+        }
+        try (var out = FileChannel.open(Path.of(parts[1]), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            var rows = gradebook.exportGrades(out, GradeCsv.delimiterFor(parts[1]));
+            System.out.println("Exported " + rows + " rows to " + parts[1]);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Export failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean handleCurve(String line) {
+        var parts = line.trim().split("\\s+");
+        if (parts.length < 2) {
+            System.out.printf("Curve: x%.4f %+.2f%n", gradebook.curveScale(), gradebook.curveOffset());
+            return true;
+        }
+        try {
+            var arg = parts[1].toUpperCase();
+            switch (arg) {
+                case "RESET" -> gradebook.resetCurve();
+                case "TOP" -> {
+                    var target = parts.length > 2 ? Double.parseDouble(parts[2]) : 100.0;
+                    if (!gradebook.curveToTop(target)) {
+                        System.out.println("No grades to curve");
+                        return false;
+                    }
+                }
+                default -> {
+                    if (arg.startsWith("*") || arg.startsWith("X")) {
+                        gradebook.curve(Double.parseDouble(arg.substring(1)), 0.0);
+                    } else {
+                        gradebook.curve(1.0, Double.parseDouble(arg));
+                    }
+                }
+            }
+            System.out.printf("Curve: x%.4f %+.2f%n", gradebook.curveScale(), gradebook.curveOffset());
+            return true;
+        } catch (IllegalArgumentException e) {
+            System.out.println("Usage: CURVE [+<points> | -<points> | *<factor> | TOP [<target>] | RESET]");
+            return false;
+        }
+    }
+
+    private boolean handleStats(String line) {
+        var parts = line.trim().split("\\s+", 2);
+        var distOpt = parts.length < 2 ? gradebook.classDistribution() : gradebook.distributionFor(parts[1]);
+        if (distOpt.isEmpty()) {
+            System.out.println(parts.length < 2 ? "No grades in system" : "No grades for " + parts[1]);
+            return false;
+        }
+        var dist = distOpt.get();
+        System.out.println("Statistics for " + (parts.length < 2 ? "the class" : parts[1]) + ":");
+        System.out.printf("  Grades: %d  Mean: %.2f  Std Dev: %.2f  Min: %d  Max: %d%n",
+                dist.count(), dist.mean(), dist.standardDeviation(), dist.min(), dist.max());
+        if (parts.length < 2) {
+            System.out.println("  Letter Grades: " + gradebook.letterDistribution());
+            var sketch = gradebook.sketch();
+            System.out.printf("  Median Grade: %d  Median Student Average: %.1f  Distinct Students (est.): %d%n",
+                    sketch.gradeQuantile(0.5), sketch.averageQuantile(0.5), sketch.distinctStudents());
+        }
+        return true;
+    }
+
+    private boolean handleTrend(String line) {
+        var parts = line.trim().split("\\s+", 2);
+        if (parts.length < 2) {
+            System.out.println("Usage: TREND <name> | TREND WINDOW [<grades>]");
+            return false;
+        }
+        if (parts[1].matches("WINDOW(\\s+\\d+)?")) {
+            return handleTrendWindow(parts[1].split("\\s+"));
+        }
+        var trend = gradebook.trendFor(parts[1]);
+        if (trend.isEmpty()) {
+            System.out.println("No grades for " + parts[1]);
+            return false;
+        }
+        var recent = trend.get();
+        System.out.printf("Trend for %s over the last %d of %d grades: average %.2f", parts[1], recent.count(),
+                gradebook.trendWindow(), recent.average());
+        if (Double.isNaN(recent.slope())) {
+            System.out.println();
+        } else {
+            System.out.printf(", slope %+.2f per grade%s%n", recent.slope(), recent.isDeclining() ? " (declining)" : "");
+        }
+        return true;
+    }
+
+    private boolean handleTrendWindow(String[] window) {
+        if (window.length == 1) {
+            System.out.println("TREND covers each student's last " + gradebook.trendWindow() + " grades");
+            return true;
+        }
+        if (follower != null) {
+            System.out.println("This is a read-only replica; send TREND WINDOW to the leader");
+            return false;
+        }
+        try {
+            gradebook.setTrendWindow(Integer.parseInt(window[1]));
+        } catch (NumberFormatException e) {
+            System.out.println("Usage: TREND WINDOW [<grades>]");
+            return false;
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return false;
+        }
+        System.out.println("TREND now covers each student's last " + gradebook.trendWindow() + " grades");
+        return true;
+    }
+
+    private boolean handleWatch(String line) {
+        var parts = line.trim().split("\\s+");
+        if (parts.length == 1) {
+            var watches = gradebook.watches();
+            if (watches.isEmpty()) {
+                System.out.println("No watches");
+            }
+            for (var watch : watches) {
+                System.out.println(watch + " (" + gradebook.watchedStudents(watch.name()).get().size() + " students)");
+            }
+            return true;
+        }
+        var name = parts[1];
+        if (parts.length == 2) {
+            var students = gradebook.watchedStudents(name);
+            if (students.isEmpty()) {
+                System.out.println("No watch named " + name);
+                return false;
+            }
+            System.out.println(students.get().isEmpty() ? "No students match " + name : name + ": " + String.join(", ", students.get()));
+            return true;
+        }
+        if (parts.length == 3 && parts[2].equalsIgnoreCase("OFF")) {
+            var removed = gradebook.removeWatch(name);
+            System.out.println(removed ? "Removed watch " + name : "No watch named " + name);
+            return removed;
+        }
+        if (parts.length != 4 || !parts[2].equalsIgnoreCase("BELOW")) {
+            System.out.println("Usage: WATCH [<watch> [BELOW <average | letter> | OFF]]");
+            return false;
+        }
+        GradeWatch watch;
+        try {
+            watch = GradeWatch.averageBelow(name, Double.parseDouble(parts[3]));
+        } catch (NumberFormatException e) {
+            watch = GradeWatch.letterBelow(name, parts[3]);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return false;
+        }
+        if (alerts == null) {
+            alerts = AlertDispatcher.start(Main::printAlert, ALERT_QUEUE_CAPACITY);
+            gradebook.setAlertDispatcher(alerts);
+        }
+        if (!gradebook.addWatch(watch)) {
+            System.out.println("Watch " + name + " already exists");
+            return false;
+        }
+        System.out.println("Watching " + watch + "; " + gradebook.watchedStudents(name).get().size() + " students match now");
+        return true;
+    }
+
+    private static void printAlert(WatchAlert alert) {
+        if (alert.matching()) {
+            System.out.printf("Alert: %s now matches %s (average %.2f)%n", alert.student(), alert.watch(), alert.average());
+        } else {
+            System.out.println("Alert: " + alert.student() + " no longer matches " + alert.watch());
+        }
+    }
+
+    private boolean handleArchiveTerm(String line) {
+        var parts = line.trim().split("\\s+", 2);
+        if (parts.length < 2) {
+            System.out.println("Usage: ARCHIVE_TERM <term>");
+            return false;
+        }
+        if (transaction != null) {
+            System.out.println("COMMIT or ROLLBACK the open transaction before archiving the term");
+            return false;
+        }
+        if (!gradebook.archiveTerm(parts[1])) {
+            System.out.println("Term " + parts[1] + " is already archived");
+            return false;
+        }
+        var students = gradebook.archivedTerm(parts[1]).get().studentCount();
+        System.out.println("Archived term " + parts[1] + " with " + students + " students; a new term has started");
+        return true;
+    }
+
+    private boolean handleTermReport(String line) {
+        var parts = line.trim().split("\\s+", 3);
+        if (parts.length < 2) {
+            var terms = gradebook.archivedTerms();
+            System.out.println(terms.isEmpty() ? "No archived terms" : "Usage: TERM_REPORT <term> [<name>]");
+            for (var term : terms) {
+                System.out.println("  " + term.name() + ": " + term.studentCount() + " students");
+            }
+            return false;
+        }
+        var term = gradebook.archivedTerm(parts[1]);
+        if (term.isEmpty()) {
+            System.out.println("No archived term " + parts[1]);
+            return false;
+        }
+        if (parts.length == 3) {
+            if (!term.get().summarize(parts[2], summary)) {
+                System.out.println("Student not found in " + parts[1] + ": " + parts[2]);
+                return false;
+            }
+            printSummary(parts[2]);
+            return true;
+        }
+        var average = term.get().classAverage();
+        System.out.println("Term " + parts[1] + ": " + term.get().studentCount() + " students, class average "
+                + average.map(value -> String.format("%.2f", value)).orElse("N/A")
+                + (term.get().isCompacted() ? "" : " (compacting)"));
+        return true;
+    }
+
+    private boolean handleMemory() {
+        var memory = gradebook.memoryReport();
+        System.out.println("Estimated heap use:");
+        System.out.printf("  Students: %d (%d bytes)%n", memory.students(), memory.studentBytes());
+        System.out.printf("  Undo history: %d steps (%d bytes)%n", memory.undoEntries(), memory.undoBytes());
+        System.out.printf("  Activity log: %d entries (%d bytes)%n", memory.logEntries(), memory.logBytes());
+        if (memory.dedupeBytes() > 0) {
+            System.out.printf("  Request-id dedupe window: %d bytes%n", memory.dedupeBytes());
+        }
+        System.out.print("  Total: " + memory.totalBytes() + " bytes");
+        System.out.println(memory.budget() == Long.MAX_VALUE ? " (no budget)" : " of a " + memory.budget() + " byte budget");
+        if (memory.offHeapBytes() > 0) {
+            System.out.println("  Off-heap grade storage: " + memory.offHeapBytes() + " bytes reserved");
+        }
+        if (memory.trimmedLogEntries() + memory.droppedUndoEntries() + memory.rejectedStudents() > 0) {
+            System.out.printf("  Shed to stay within budget: %d log entries, %d undo steps; refused %d students%n",
+                    memory.trimmedLogEntries(), memory.droppedUndoEntries(), memory.rejectedStudents());
+        }
+        return true;
+    }
+
+    private boolean handleCompact(String line) {
+        var parts = line.trim().split("\\s+", 2);
+        try {
+            var idleFor = parts.length > 1
+                    ? Duration.ofSeconds(Long.parseLong(parts[1]))
+                    : gradebook.coldAfter().orElse(Duration.ZERO);
+            var packed = gradebook.compactIdleStudents(idleFor);
+            var report = gradebook.coldStorageReport();
+            System.out.println("Packed " + packed + " idle students");
+            System.out.printf("Packed students: %d  Saved: %d bytes (%d -> %d)%n", report.packedStudents(),
+                    report.savedBytes(), report.unpackedBytes(), report.packedBytes());
+            return true;
+        } catch (NumberFormatException e) {
+            System.out.println("Usage: COMPACT [<idle seconds>]");
+            return false;
+        }
+    }
+
+    private boolean handleBegin() {
+        if (transaction != null) {
+            System.out.println("A transaction is already open; COMMIT or ROLLBACK it first");
+            return false;
+        }
+        transaction = gradebook.begin();
+        System.out.println("Transaction started; ADD_STUDENT, ADD_GRADE and REMOVE_STUDENT are pending until COMMIT");
+        return true;
+    }
+
+    private boolean handleCommit() {
+        if (transaction == null) {
+            System.out.println("No open transaction");
+            return false;
+        }
+        var changes = transaction.size();
+        boolean success;
+        try {
+            success = transaction.commit();
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            System.out.println("Nothing was applied: " + e.getMessage());
+            return false;
+        } finally {
+            transaction = null;
+        }
+        if (success) {
+            System.out.println("Committed " + changes + " changes");
+        } else {
+            System.out.println("Transaction conflicted with another change; nothing was applied");
+        }
+        return success;
+    }
+
+    private boolean handleRollback() {
+        if (transaction == null) {
+            System.out.println("No open transaction");
+            return false;
+        }
+        var changes = transaction.size();
+        transaction.rollback();
+        transaction = null;
+        System.out.println("Rolled back " + changes + " changes");
+        return true;
+    }
+
+    private boolean handleReportAll(String line) {
+        var parts = line.trim().split("\\s+", 3);
+        var order = ReportOrder.UNSORTED;
+        var next = 1;
+        if (parts.length > 1) {
+            var arg = parts[1].toUpperCase();
+            if (arg.equals("NAME") || arg.equals("AVERAGE")) {
+                order = ReportOrder.valueOf(arg);
+                next = 2;
+            }
+        }
+        if (parts.length > next + 1) {
+            System.out.println("Usage: REPORT_ALL [NAME | AVERAGE] [<file>]");
+            return false;
+        }
+        try {
+            long students;
+            if (parts.length > next) {
+                try (var out = FileChannel.open(Path.of(parts[next]), StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    students = gradebook.reportAll(out, order);
+                }
+                System.out.println("Reported " + students + " students to " + parts[next]);
+            } else {
+                students = gradebook.reportAll(Channels.newChannel(System.out), order);
+                System.out.flush();
+                System.out.println("Reported " + students + " students");
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Report failed: " + e.getMessage());
+            return false;
+        }
+    }
 }
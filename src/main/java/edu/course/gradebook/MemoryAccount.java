@@ -0,0 +1,54 @@
+package edu.course.gradebook;
+
+/**
+ * Running estimates of the heap a gradebook's students, undo history,
+ * activity log and dedupe window hold, kept up to date by each change so
+ * reading them is O(1).
+ *
+ * Sizes assume a 64-bit JVM with compressed pointers and Latin-1 strings.
+ */
+final class MemoryAccount {
+    /** A HashMap node plus its share of the table. */
+    static final long MAP_ENTRY_BYTES = 48;
+    /** A LinkedList node. */
+    static final long LIST_NODE_BYTES = 24;
+    /** An undo lambda with a few captured values, plus its deque slot. */
+    static final long UNDO_ENTRY_BYTES = 48;
+
+    long studentBytes;
+    long undoBytes;
+    long logBytes;
+    /** The dedupe window's fixed-size tables, which outlive terms. */
+    long dedupeBytes;
+    long trimmedLogEntries;
+    long droppedUndoEntries;
+    long rejectedStudents;
+
+    long totalBytes() {
+        return studentBytes + undoBytes + logBytes + dedupeBytes;
+    }
+
+    /**
+     * Forgets the term's students, undo history and log; the dedupe window stays.
+     */
+    void reset() {
+        studentBytes = 0;
+        undoBytes = 0;
+        logBytes = 0;
+    }
+
+    static long student(String name, StudentGrades grades) {
+        return MAP_ENTRY_BYTES + string(name) + grades.estimatedBytes();
+    }
+
+    static long logEntry(String entry) {
+        return LIST_NODE_BYTES + string(entry);
+    }
+
+    /**
+     * A String object plus its byte array, rounded up to 8 bytes.
+     */
+    static long string(String value) {
+        return 24 + ((16L + value.length() + 7) & ~7L);
+    }
+}
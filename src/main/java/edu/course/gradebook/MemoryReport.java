@@ -0,0 +1,26 @@
+package edu.course.gradebook;
+
+/**
+ * Estimated heap held by a gradebook's live term, and what its memory budget has shed so far.
+ *
+ * @param students number of students
+ * @param studentBytes the students' names, grades and aggregates
+ * @param undoEntries number of undo steps
+ * @param undoBytes the undo steps and anything only they still hold, such as removed students
+ * @param logEntries number of activity log entries
+ * @param logBytes the activity log entries
+ * @param dedupeBytes the request-id dedupe window, a fixed size once the first request id arrives
+ * @param offHeapBytes direct memory reserved for grades with off-heap storage, outside the heap figures
+ * @param budget the memory budget in bytes, or {@link Long#MAX_VALUE} if there is none
+ * @param trimmedLogEntries activity log entries dropped to stay within the budget
+ * @param droppedUndoEntries undo steps dropped to stay within the budget
+ * @param rejectedStudents students refused because the budget was used up
+ */
+public record MemoryReport(int students, long studentBytes, int undoEntries, long undoBytes,
+        int logEntries, long logBytes, long dedupeBytes, long offHeapBytes, long budget,
+        long trimmedLogEntries, long droppedUndoEntries, long rejectedStudents) {
+
+    public long totalBytes() {
+        return studentBytes + undoBytes + logBytes + dedupeBytes;
+    }
+}
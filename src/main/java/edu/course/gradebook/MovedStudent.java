@@ -0,0 +1,18 @@
+package edu.course.gradebook;
+
+import java.util.List;
+
+/**
+ * A student's grades, in the order they were recorded, with each grade's category,
+ * as handed from one {@link GradebookNode} to another.
+ */
+public record MovedStudent(String name, List<Integer> grades, List<String> categories) {
+
+    public MovedStudent {
+        if (grades.size() != categories.size()) {
+            throw new IllegalArgumentException("Every grade needs a category");
+        }
+        grades = List.copyOf(grades);
+        categories = List.copyOf(categories);
+    }
+}
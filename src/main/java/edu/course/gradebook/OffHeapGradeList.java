@@ -0,0 +1,172 @@
+package edu.course.gradebook;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A student's grades stored in an {@link OffHeapGradeStore}.
+ *
+ * Grades and their categories are packed two bytes per grade into a direct
+ * block that doubles when full; the counting arrays behind each
+ * {@link GradeStats} are direct blocks as well. Reading a grade back through
+ * the list view never allocates because every grade is in the Integer cache.
+ */
+final class OffHeapGradeList extends AbstractList<Integer> implements StudentGrades {
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int HISTOGRAM_BYTES = (GradeStats.MAX_GRADE + 1) * Integer.BYTES;
+
+    private final OffHeapGradeStore store;
+    private final ByteBuffer overallBlock;
+    private final GradeStats overall;
+    private GradeWindow window;
+    private GradeStats[] byCategory = new GradeStats[1];
+    private ByteBuffer[] categoryBlocks = new ByteBuffer[1];
+    private ByteBuffer column;
+    private int size;
+    private long lastModified = System.nanoTime();
+    private long version;
+
+    OffHeapGradeList(OffHeapGradeStore store, int windowLength) {
+        this.store = store;
+        this.window = new GradeWindow(windowLength);
+        this.overallBlock = store.allocate(HISTOGRAM_BYTES);
+        this.overall = new GradeStats(overallBlock.asIntBuffer());
+        this.column = store.allocate(INITIAL_CAPACITY * 2);
+    }
+
+    @Override
+    public Integer get(int index) {
+        Objects.checkIndex(index, size);
+        return column.get(2 * index) & 0xFF;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void append(int grade, int category) {
+        var stats = statsFor(category);
+        stats.add(grade);
+        overall.add(grade);
+        window.append(grade);
+        lastModified = System.nanoTime();
+        if (2 * size == column.capacity()) {
+            var grown = store.allocate(column.capacity() * 2);
+            grown.put(0, column, 0, column.capacity());
+            store.free(column);
+            column = grown;
+        }
+        column.put(2 * size, (byte) grade);
+        column.put(2 * size + 1, (byte) category);
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public int dropLast() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        int index = size - 1;
+        int grade = column.get(2 * index) & 0xFF;
+        byCategory[column.get(2 * index + 1)].remove(grade);
+        overall.remove(grade);
+        window.dropLast(grade, window.reentering(this, size));
+        lastModified = System.nanoTime();
+        size--;
+        modCount++;
+        return grade;
+    }
+
+    @Override
+    public int categoryAt(int index) {
+        Objects.checkIndex(index, size);
+        return column.get(2 * index + 1);
+    }
+
+    @Override
+    public GradeStats overall() {
+        return overall;
+    }
+
+    @Override
+    public GradeStats category(int category) {
+        return category < byCategory.length ? byCategory[category] : null;
+    }
+
+    @Override
+    public GradeWindow window() {
+        return window;
+    }
+
+    @Override
+    public void resizeWindow(int length) {
+        window = GradeWindow.of(this, length);
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @Override
+    public long lastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Gives the grade column and every counting array back to the store.
+     */
+    @Override
+    public void release() {
+        if (column == null) {
+            return;
+        }
+        store.free(column);
+        store.free(overallBlock);
+        for (var block : categoryBlocks) {
+            if (block != null) {
+                store.free(block);
+            }
+        }
+        column = null;
+        size = 0;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return 56 + 48 + 2 * (16 + 4L * byCategory.length) + window.estimatedBytes() + GradeStats.DIRECT_BYTES * (1 + statsCount());
+    }
+
+    private int statsCount() {
+        int count = 0;
+        for (var stats : byCategory) {
+            if (stats != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private GradeStats statsFor(int category) {
+        if (category >= byCategory.length) {
+            byCategory = Arrays.copyOf(byCategory, category + 1);
+            categoryBlocks = Arrays.copyOf(categoryBlocks, category + 1);
+        }
+        if (byCategory[category] == null) {
+            categoryBlocks[category] = store.allocate(HISTOGRAM_BYTES);
+            byCategory[category] = new GradeStats(categoryBlocks[category].asIntBuffer());
+        }
+        return byCategory[category];
+    }
+}
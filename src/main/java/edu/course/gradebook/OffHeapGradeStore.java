@@ -0,0 +1,90 @@
+package edu.course.gradebook;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * Keeps grade columns and counting arrays in direct memory.
+ *
+ * Memory is reserved from the operating system in 1 MiB chunks and handed
+ * out as power-of-two blocks, so the garbage collector only ever sees the
+ * small buffer objects that point into a chunk, never the grades themselves.
+ * Blocks given back when a grade column grows, or when a student is gone for
+ * good (see {@link StudentGrades#release()}), are reused for later requests
+ * of the same size.
+ *
+ * Like the rest of Gradebook this class is not thread-safe.
+ */
+final class OffHeapGradeStore implements GradeStore {
+    static final int CHUNK_SIZE = 1 << 20;
+    private static final int MIN_BLOCK_SHIFT = 4;
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<ByteBuffer>[] freeBlocks = (ArrayDeque<ByteBuffer>[]) new ArrayDeque<?>[Integer.SIZE];
+    private ByteBuffer chunk;
+    private int chunkPosition;
+    private long reservedBytes;
+    private long usedBytes;
+
+    @Override
+    public StudentGrades newStudent(int windowLength) {
+        return new OffHeapGradeList(this, windowLength);
+    }
+
+    /**
+     * Returns a zero-filled block of at least the given size in native byte order.
+     */
+    ByteBuffer allocate(int bytes) {
+        int shift = Math.max(MIN_BLOCK_SHIFT, Integer.SIZE - Integer.numberOfLeadingZeros(bytes - 1));
+        int blockSize = 1 << shift;
+        usedBytes += blockSize;
+
+        var free = freeBlocks[shift];
+        if (free != null && !free.isEmpty()) {
+            var block = free.pop();
+            for (int i = 0; i < blockSize; i += Long.BYTES) {
+                block.putLong(i, 0L);
+            }
+            return block;
+        }
+        if (blockSize > CHUNK_SIZE) {
+            reservedBytes += blockSize;
+            return ByteBuffer.allocateDirect(blockSize).order(ByteOrder.nativeOrder());
+        }
+        if (chunk == null || chunkPosition + blockSize > CHUNK_SIZE) {
+            chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            chunkPosition = 0;
+            reservedBytes += CHUNK_SIZE;
+        }
+        var block = chunk.slice(chunkPosition, blockSize).order(ByteOrder.nativeOrder());
+        chunkPosition += blockSize;
+        return block;
+    }
+
+    /**
+     * Returns a block obtained from {@link #allocate(int)} for reuse.
+     */
+    void free(ByteBuffer block) {
+        int shift = Integer.numberOfTrailingZeros(block.capacity());
+        if (freeBlocks[shift] == null) {
+            freeBlocks[shift] = new ArrayDeque<>();
+        }
+        freeBlocks[shift].push(block);
+        usedBytes -= block.capacity();
+    }
+
+    /**
+     * Direct memory reserved from the operating system so far.
+     */
+    long reservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * Direct memory currently handed out to students.
+     */
+    long usedBytes() {
+        return usedBytes;
+    }
+}
@@ -0,0 +1,203 @@
+package edu.course.gradebook;
+
+import java.util.AbstractList;
+import java.util.Objects;
+
+/**
+ * A read-only, bit-packed copy of a student's grades for students that have
+ * not changed in a while.
+ *
+ * Grades fit in 7 bits, so nine of them share each long. When every grade is
+ * in the same category the category is stored once; otherwise one byte per
+ * grade records it. Only the count and sum per category are kept, which is
+ * all a plain average needs, so reports, letter grades and watches read a
+ * packed student without allocating. Counting arrays are not kept:
+ * {@link #overall()} and {@link #category(int)} rebuild them from the packed
+ * grades, for the rarer queries that drop grades, and
+ * {@link #countInto(int[])} tallies the grades straight into a caller's array.
+ *
+ * Gradebook swaps a packed list back for a mutable one before changing it.
+ */
+final class PackedGradeList extends AbstractList<Integer> implements StudentGrades {
+    private static final int BITS = 7;
+    private static final int PER_WORD = Long.SIZE / BITS;
+    private static final long MASK = (1L << BITS) - 1;
+
+    private final long[] words;
+    private final byte[] categories;
+    private final int category;
+    private final int[] categoryCounts;
+    private final long[] categorySums;
+    private final int size;
+    private final long sum;
+    private final long lastModified;
+    private int windowLength;
+    private long unpackedBytes;
+    private long version;
+
+    private PackedGradeList(StudentGrades source) {
+        size = source.size();
+        words = new long[(size + PER_WORD - 1) / PER_WORD];
+        int first = size == 0 ? 0 : source.categoryAt(0);
+        boolean uniform = true;
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            int grade = source.get(i);
+            words[i / PER_WORD] |= (long) grade << (i % PER_WORD * BITS);
+            total += grade;
+            uniform &= source.categoryAt(i) == first;
+        }
+        if (uniform) {
+            categories = null;
+            categoryCounts = null;
+            categorySums = null;
+        } else {
+            categories = new byte[size];
+            int maxCategory = 0;
+            for (int i = 0; i < size; i++) {
+                categories[i] = (byte) source.categoryAt(i);
+                maxCategory = Math.max(maxCategory, categories[i]);
+            }
+            categoryCounts = new int[maxCategory + 1];
+            categorySums = new long[maxCategory + 1];
+            for (int i = 0; i < size; i++) {
+                categoryCounts[categories[i]]++;
+                categorySums[categories[i]] += source.get(i);
+            }
+        }
+        category = first;
+        sum = total;
+        lastModified = source.lastModified();
+        windowLength = source.window().length();
+        unpackedBytes = source.estimatedBytes();
+        version = source.version();
+    }
+
+    static PackedGradeList pack(StudentGrades source) {
+        return new PackedGradeList(source);
+    }
+
+    @Override
+    public Integer get(int index) {
+        Objects.checkIndex(index, size);
+        return (int) (words[index / PER_WORD] >>> (index % PER_WORD * BITS) & MASK);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void append(int grade, int category) {
+        throw new UnsupportedOperationException("Packed grades are read-only");
+    }
+
+    @Override
+    public int dropLast() {
+        throw new UnsupportedOperationException("Packed grades are read-only");
+    }
+
+    @Override
+    public int categoryAt(int index) {
+        Objects.checkIndex(index, size);
+        return categories == null ? category : categories[index];
+    }
+
+    @Override
+    public GradeStats overall() {
+        var stats = new GradeStats();
+        for (int i = 0; i < size; i++) {
+            stats.add(get(i));
+        }
+        return stats;
+    }
+
+    @Override
+    public GradeStats category(int category) {
+        GradeStats stats = null;
+        for (int i = 0; i < size; i++) {
+            if (categoryAt(i) == category) {
+                if (stats == null) {
+                    stats = new GradeStats();
+                }
+                stats.add(get(i));
+            }
+        }
+        return stats;
+    }
+
+    @Override
+    public int categoryCount(int category) {
+        if (categoryCounts == null) {
+            return category == this.category ? size : 0;
+        }
+        return category < categoryCounts.length ? categoryCounts[category] : 0;
+    }
+
+    @Override
+    public long categorySum(int category) {
+        if (categorySums == null) {
+            return category == this.category ? sum : 0;
+        }
+        return category < categorySums.length ? categorySums[category] : 0;
+    }
+
+    @Override
+    public long gradeSum() {
+        return sum;
+    }
+
+    /**
+     * Adds one to total[grade] for each grade.
+     */
+    void countInto(int[] total) {
+        for (int i = 0; i < size; i++) {
+            total[(int) (words[i / PER_WORD] >>> (i % PER_WORD * BITS) & MASK)]++;
+        }
+    }
+
+    @Override
+    public GradeWindow window() {
+        return GradeWindow.of(this, windowLength);
+    }
+
+    @Override
+    public void resizeWindow(int length) {
+        unpackedBytes += 4L * (length - windowLength);
+        windowLength = length;
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @Override
+    public long lastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public boolean isPacked() {
+        return true;
+    }
+
+    @Override
+    public long estimatedBytes() {
+        long bytes = 56 + 16 + 8L * words.length;
+        return categories == null ? bytes : bytes + 16 + categories.length + 32 + 12L * categoryCounts.length;
+    }
+
+    /**
+     * The estimated size of the mutable list this was packed from.
+     */
+    long unpackedBytes() {
+        return unpackedBytes;
+    }
+}
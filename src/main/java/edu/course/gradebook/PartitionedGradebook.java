@@ -0,0 +1,242 @@
+package edu.course.gradebook;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * A course whose students are spread over several {@link GradebookNode}s by hashed name.
+ *
+ * Each student lives on the node with the highest hash of (student name,
+ * node id), which is rendezvous hashing. Single-student operations go
+ * straight to that node. Class-wide queries are sent to every node at once
+ * and their partial results merged: grade counts and sums add up exactly,
+ * and distributions combine with the parallel variance formula. When a node
+ * joins or leaves, only the students whose owner changed are moved, which is
+ * about 1/N of them.
+ *
+ * Curves, undo and transactions are not coordinated across nodes; averages
+ * here are uncurved.
+ *
+ * This class is not thread-safe. {@link #addNode(GradebookNode)} and
+ * {@link #removeNode(GradebookNode)} change the node list that every
+ * operation reads, and while they move students a write routed to a
+ * student's new node before it arrives there returns false. Call them only
+ * while nothing else uses the gradebook.
+ */
+public final class PartitionedGradebook implements AutoCloseable {
+    private final List<GradebookNode> nodes = new ArrayList<>();
+    private final List<Long> nodeSeeds = new ArrayList<>();
+    private final ExecutorService scatter = Executors.newVirtualThreadPerTaskExecutor();
+    private GradingScheme gradingScheme = GradingScheme.standard();
+
+    /**
+     * @throws IllegalArgumentException if there are no nodes or two share an id
+     */
+    public PartitionedGradebook(List<GradebookNode> nodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A partitioned gradebook needs at least one node");
+        }
+        for (var node : nodes) {
+            addNodeWithoutMoving(node);
+        }
+    }
+
+    public List<GradebookNode> nodes() {
+        return List.copyOf(nodes);
+    }
+
+    /**
+     * Returns the node that owns a student's name.
+     */
+    public GradebookNode nodeFor(String name) {
+        long nameHash = mix(name.hashCode());
+        int best = 0;
+        long bestScore = Long.MIN_VALUE;
+        for (int i = 0; i < nodes.size(); i++) {
+            long score = mix(nameHash ^ nodeSeeds.get(i));
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return nodes.get(best);
+    }
+
+    public boolean addStudent(String name) {
+        return nodeFor(name).addStudent(name);
+    }
+
+    public boolean addGrade(String name, int grade) {
+        return addGrade(name, GradingScheme.DEFAULT_CATEGORY, grade);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the grade is outside 0–100
+     */
+    public boolean addGrade(String name, String category, int grade) {
+        GradeStats.checkGrade(grade);
+        return nodeFor(name).addGrade(name, category, grade);
+    }
+
+    public boolean removeStudent(String name) {
+        return nodeFor(name).removeStudent(name);
+    }
+
+    /**
+     * Fills a summary from the student's node (see {@link Gradebook#summarize(String, StudentSummary)}).
+     */
+    public boolean summarize(String name, StudentSummary into) {
+        return nodeFor(name).summarize(name, into);
+    }
+
+    /**
+     * Sets the grading scheme on every node.
+     */
+    public void setGradingScheme(GradingScheme scheme) {
+        gradingScheme = scheme;
+        scatter(node -> {
+            node.setGradingScheme(scheme);
+            return null;
+        });
+    }
+
+    /**
+     * Average of every grade in the course, from each node's grade count and sum.
+     */
+    public OptionalDouble classAverage() {
+        var totals = new GradeTotals(0, 0);
+        for (var partial : scatter(GradebookNode::totals)) {
+            totals = totals.plus(partial);
+        }
+        return totals.count() == 0 ? OptionalDouble.empty() : OptionalDouble.of((double) totals.sum() / totals.count());
+    }
+
+    public Optional<GradeDistribution> classDistribution() {
+        Optional<GradeDistribution> merged = Optional.empty();
+        for (var partial : scatter(GradebookNode::classDistribution)) {
+            if (partial.isPresent()) {
+                merged = Optional.of(merged.map(m -> m.merge(partial.get())).orElse(partial.get()));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Students per letter grade across every node, in cutoff order.
+     */
+    public Map<String, Integer> letterDistribution() {
+        var counts = new LinkedHashMap<String, Integer>();
+        for (var cutoff : gradingScheme.cutoffs()) {
+            counts.put(cutoff.letter(), 0);
+        }
+        for (var partial : scatter(GradebookNode::letterDistribution)) {
+            partial.forEach((letter, count) -> counts.merge(letter, count, Integer::sum));
+        }
+        return counts;
+    }
+
+    /**
+     * Adds a node and moves to it the students it now owns; nothing else moves.
+     *
+     * @return the number of students moved
+     * @throws IllegalArgumentException if a node with the same id is already present
+     */
+    public int addNode(GradebookNode node) {
+        addNodeWithoutMoving(node);
+        node.setGradingScheme(gradingScheme);
+        int moved = 0;
+        for (var other : nodes) {
+            if (other == node) {
+                continue;
+            }
+            for (var name : other.studentNames()) {
+                if (nodeFor(name) == node) {
+                    moved += move(other, node, name);
+                }
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Removes a node, moving each of its students to its new owner.
+     *
+     * @return the number of students moved
+     * @throws IllegalArgumentException if it is the last node or not part of this gradebook
+     */
+    public int removeNode(GradebookNode node) {
+        int index = nodes.indexOf(node);
+        if (index < 0 || nodes.size() == 1) {
+            throw new IllegalArgumentException("Can only remove one of several nodes in this gradebook");
+        }
+        nodes.remove(index);
+        nodeSeeds.remove(index);
+        int moved = 0;
+        for (var name : node.studentNames()) {
+            moved += move(node, nodeFor(name), name);
+        }
+        return moved;
+    }
+
+    @Override
+    public void close() {
+        scatter.close();
+    }
+
+    private void addNodeWithoutMoving(GradebookNode node) {
+        for (var existing : nodes) {
+            if (existing.id().equals(node.id())) {
+                throw new IllegalArgumentException("Duplicate node id: " + node.id());
+            }
+        }
+        nodes.add(node);
+        nodeSeeds.add(mix(node.id().hashCode() * 0x9E3779B97F4A7C15L));
+    }
+
+    private static int move(GradebookNode from, GradebookNode to, String name) {
+        var student = from.takeStudent(name);
+        if (student.isEmpty()) {
+            return 0;
+        }
+        if (!to.putStudent(student.get())) {
+            from.putStudent(student.get());
+            throw new IllegalStateException("Student " + name + " exists on both " + from.id() + " and " + to.id());
+        }
+        return 1;
+    }
+
+    /**
+     * Runs a query on every node at once and returns the results in node order.
+     */
+    private <T> List<T> scatter(Function<GradebookNode, T> query) {
+        var futures = new ArrayList<CompletableFuture<T>>(nodes.size());
+        for (var node : nodes) {
+            futures.add(CompletableFuture.supplyAsync(() -> query.apply(node), scatter));
+        }
+        var results = new ArrayList<T>(futures.size());
+        for (var future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    /**
+     * The 64-bit finalizer from MurmurHash3, so nearby hash codes score independently.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
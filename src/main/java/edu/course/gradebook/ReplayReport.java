@@ -0,0 +1,28 @@
+package edu.course.gradebook;
+
+/**
+ * What replaying a command trace measured.
+ *
+ * Latencies are per command in nanoseconds. When the replay is paced, a
+ * command's latency counts from when it was due rather than when it started,
+ * so time spent falling behind the trace is not hidden.
+ *
+ * @param operations commands executed
+ * @param skipped commands in the trace that replay does not execute (file and curve commands)
+ * @param elapsedNanos wall-clock time of the whole replay
+ */
+public record ReplayReport(long operations, long skipped, long elapsedNanos, long p50Nanos, long p90Nanos,
+                           long p99Nanos, long p999Nanos, long maxNanos) {
+
+    public double operationsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : operations * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d operations (%d skipped) in %.3f s: %.0f ops/s, latency p50 %.1f us, "
+                        + "p90 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+                operations, skipped, elapsedNanos / 1e9, operationsPerSecond(), p50Nanos / 1e3,
+                p90Nanos / 1e3, p99Nanos / 1e3, p999Nanos / 1e3, maxNanos / 1e3);
+    }
+}
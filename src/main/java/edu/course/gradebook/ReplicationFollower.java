@@ -0,0 +1,218 @@
+package edu.course.gradebook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * A read-only replica of a {@link ReplicationLeader}'s gradebook.
+ *
+ * A background thread reads the leader's log off a loopback socket and
+ * applies everything that arrived in one read as a single batch under this
+ * follower's lock. Queries run under the same lock, so they never see a
+ * batch half applied. A group of entries from one leader operation, such as
+ * a transaction, is held back until all of it has arrived, so queries never
+ * see an operation half applied either.
+ *
+ * The follower counts as fresh while it last held every change the leader
+ * had made no longer than maxStaleness ago. The leader sends a heartbeat
+ * after every batch and every 50 ms when idle, so maxStaleness should be
+ * comfortably above that. {@link #read(Function)} refuses to answer from a
+ * stale replica.
+ */
+public final class ReplicationFollower implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Gradebook gradebook = new Gradebook();
+    private final SocketChannel channel;
+    private final long maxStalenessNanos;
+    private long appliedSequence = -1;
+    private long caughtUpNanos;
+    private boolean inSnapshot;
+    private boolean caughtUp;
+
+    private ReplicationFollower(SocketChannel channel, Duration maxStaleness) {
+        this.channel = channel;
+        this.maxStalenessNanos = maxStaleness.toNanos();
+        Thread.ofPlatform().name("gradebook-replication-receive").daemon().start(this::receiveLoop);
+    }
+
+    /**
+     * Connects to a leader on a loopback port and starts catching up from its snapshot.
+     */
+    public static ReplicationFollower connect(int port, Duration maxStaleness) throws IOException {
+        var channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        return new ReplicationFollower(channel, maxStaleness);
+    }
+
+    /**
+     * Runs a read-only query against the replica.
+     *
+     * @return empty if the replica is staler than its bound (or has not caught up yet)
+     */
+    public synchronized <T> Optional<T> read(Function<Gradebook, T> query) {
+        return isFresh() ? Optional.ofNullable(query.apply(gradebook)) : Optional.empty();
+    }
+
+    public synchronized boolean isFresh() {
+        return caughtUp && !inSnapshot && System.nanoTime() - caughtUpNanos <= maxStalenessNanos;
+    }
+
+    /**
+     * Number of the leader's changes applied so far, or -1 before the first snapshot arrives.
+     */
+    public synchronized long appliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * Waits until at least the given number of the leader's changes (see
+     * {@link ReplicationLeader#sequence()}) are applied and the replica is
+     * fresh, so a following {@link #read(Function)} sees them.
+     *
+     * @return false if that didn't happen within the timeout
+     */
+    public synchronized boolean awaitSequence(long sequence, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (appliedSequence < sequence || !isFresh()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !channel.isOpen()) {
+                return false;
+            }
+            wait(Math.max(1, remaining / 1_000_000));
+        }
+        return true;
+    }
+
+    /**
+     * Caps the replica's estimated heap (see {@link Gradebook#setMemoryBudget(long)}),
+     * under the lock the receive thread applies changes with.
+     */
+    public synchronized void setMemoryBudget(long bytes) {
+        gradebook.setMemoryBudget(bytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * The replica itself, for callers that hold this follower's lock.
+     */
+    Gradebook gradebook() {
+        return gradebook;
+    }
+
+    private void receiveLoop() {
+        var in = ByteBuffer.allocate(BUFFER_SIZE);
+        try (channel) {
+            while (channel.read(in) >= 0) {
+                in.flip();
+                applyBatch(in);
+                if (in.position() == 0 && in.limit() == in.capacity()) {
+                    // A single frame is larger than the buffer
+                    in = ByteBuffer.allocate(in.capacity() * 2).put(in);
+                } else {
+                    in.compact();
+                }
+            }
+        } catch (IOException e) {
+            // The leader went away or the follower was closed
+        } finally {
+            synchronized (this) {
+                caughtUp = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Applies every whole frame in the buffer, leaving a trailing partial frame
+     * or group unread.
+     */
+    private synchronized void applyBatch(ByteBuffer in) {
+        while (in.hasRemaining()) {
+            int start = in.position();
+            var frame = nextFrame(in);
+            if (frame == null) {
+                break;
+            }
+            if (frame.get(0) == ReplicationLog.GROUP_BEGIN && !groupArrived(in)) {
+                in.position(start);
+                break;
+            }
+            apply(frame);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Reads the next whole frame, or returns null and leaves the buffer as it was.
+     */
+    private static ByteBuffer nextFrame(ByteBuffer in) {
+        int start = in.position();
+        int length;
+        try {
+            length = BinaryProtocol.readVarint(in);
+        } catch (BufferUnderflowException e) {
+            in.position(start);
+            return null;
+        }
+        if (in.remaining() < length) {
+            in.position(start);
+            return null;
+        }
+        var frame = in.slice(in.position(), length);
+        in.position(in.position() + length);
+        return frame;
+    }
+
+    /**
+     * Whether the buffer holds the rest of a group, up to its GROUP_END, after the current position.
+     */
+    private static boolean groupArrived(ByteBuffer in) {
+        var ahead = in.duplicate();
+        for (var frame = nextFrame(ahead); frame != null; frame = nextFrame(ahead)) {
+            if (frame.get(0) == ReplicationLog.GROUP_END) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void apply(ByteBuffer frame) {
+        switch (frame.get(0)) {
+            case ReplicationLog.RESET -> {
+                inSnapshot = true;
+                gradebook.applyReplicated(frame);
+            }
+            case ReplicationLog.SEQUENCE -> {
+                frame.get();
+                appliedSequence = frame.getLong();
+                inSnapshot = false;
+            }
+            case ReplicationLog.HEARTBEAT -> {
+                frame.get();
+                if (!inSnapshot && appliedSequence >= frame.getLong()) {
+                    caughtUp = true;
+                    caughtUpNanos = System.nanoTime();
+                }
+            }
+            case ReplicationLog.GROUP_BEGIN, ReplicationLog.GROUP_END -> appliedSequence++;
+            default -> {
+                gradebook.applyReplicated(frame);
+                if (!inSnapshot) {
+                    appliedSequence++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package edu.course.gradebook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Ships every change made to a gradebook to {@link ReplicationFollower}s
+ * connected over a loopback socket, so read-heavy traffic can be served by
+ * replicas while this instance keeps taking writes.
+ *
+ * The gradebook records each change into a {@link ReplicationLog} on the
+ * thread that makes it; that is the only cost on the write path. One sender
+ * thread per follower then streams the log in batches of up to 64 KiB, each
+ * followed by a heartbeat with the leader's sequence number, and sends a
+ * heartbeat on its own whenever nothing changed for 50 ms. A new follower, or
+ * one that fell behind the start of the log, first receives a snapshot of
+ * the whole gradebook.
+ *
+ * The log takes no lock, so a replicated gradebook must be changed from one
+ * thread at a time, and that includes {@link Transaction#commit()}: commits
+ * from several threads would append to the log concurrently.
+ */
+public final class ReplicationLeader implements Closeable {
+    static final long HEARTBEAT_MILLIS = 50;
+    static final int BATCH_BYTES = 1 << 16;
+    /** Entries kept in the log before the leader writes a fresh snapshot. */
+    static final int MAX_LOG_ENTRIES = 100_000;
+
+    private final Gradebook gradebook;
+    private final ReplicationLog log;
+    private final ServerSocketChannel server;
+    private final List<SocketChannel> followers = new CopyOnWriteArrayList<>();
+
+    private ReplicationLeader(Gradebook gradebook, ReplicationLog log, ServerSocketChannel server) {
+        this.gradebook = gradebook;
+        this.log = log;
+        this.server = server;
+        Thread.ofPlatform().name("gradebook-replication-accept").daemon().start(this::acceptLoop);
+    }
+
+    /**
+     * Starts replicating a gradebook to followers that connect to the given
+     * loopback port (0 picks a free one; see {@link #port()}).
+     *
+     * Call this from the thread that changes the gradebook, before changing it further.
+     */
+    public static ReplicationLeader start(Gradebook gradebook, int port) throws IOException {
+        var server = ServerSocketChannel.open();
+        try {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        var log = new ReplicationLog(MAX_LOG_ENTRIES);
+        gradebook.replicateTo(log);
+        return new ReplicationLeader(gradebook, log, server);
+    }
+
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Number of changes recorded so far; a follower has caught up with every
+     * change made before this call once its applied sequence reaches this value.
+     */
+    public long sequence() {
+        return log.sequence();
+    }
+
+    public int followerCount() {
+        return followers.size();
+    }
+
+    /**
+     * Stops accepting followers, disconnects them and stops recording changes.
+     * Call this from the thread that changes the gradebook.
+     */
+    @Override
+    public void close() throws IOException {
+        gradebook.replicateTo(null);
+        log.close();
+        server.close();
+        for (var follower : followers) {
+            follower.close();
+        }
+    }
+
+    private void acceptLoop() {
+        try {
+            while (true) {
+                var follower = server.accept();
+                followers.add(follower);
+                Thread.ofPlatform().name("gradebook-replication-send").daemon().start(() -> sendLoop(follower));
+            }
+        } catch (IOException e) {
+            // The server socket was closed
+        }
+    }
+
+    private void sendLoop(SocketChannel follower) {
+        var batch = ByteBuffer.allocateDirect(BATCH_BYTES);
+        long next = ReplicationLog.SNAPSHOT_NEEDED;
+        long waitMillis = HEARTBEAT_MILLIS;
+        try (follower) {
+            while (true) {
+                batch.clear();
+                long after = next < 0 ? next : log.read(next, batch, waitMillis);
+                waitMillis = HEARTBEAT_MILLIS;
+                if (after == ReplicationLog.CLOSED) {
+                    return;
+                }
+                if (after == ReplicationLog.SNAPSHOT_NEEDED) {
+                    var snapshot = log.snapshot();
+                    writeFully(follower, ByteBuffer.wrap(snapshot.frames()));
+                    next = snapshot.sequence();
+                    // Follow the snapshot with a heartbeat straight away
+                    waitMillis = 0;
+                    continue;
+                }
+                writeFully(follower, batch.flip());
+                // An entry too large to batch is sent on its own
+                var single = after == next ? log.entry(next) : null;
+                if (single != null) {
+                    writeFully(follower, ByteBuffer.wrap(single));
+                    after++;
+                }
+                next = after;
+            }
+        } catch (IOException e) {
+            // The follower went away
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            followers.remove(follower);
+        }
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package edu.course.gradebook;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The ordered log of changes a leader {@link Gradebook} ships to its followers.
+ *
+ * Entries are logical and per student: a student was added or removed, a
+ * grade was appended to or dropped from the end of a student's list, the
+ * grading scheme, curve or trend window was set, or an activity-log line was
+ * written. Undo, transactions and imports all come out as these same
+ * entries, so a follower needs no undo stack of its own.
+ *
+ * Each entry is encoded once, as a length-prefixed frame, when the leader
+ * makes the change. Once the log holds its maximum number of entries, the
+ * leader writes a snapshot of its whole state and the entries before it are
+ * dropped. Followers that are that far behind start over from the snapshot.
+ *
+ * The entries of one gradebook operation that makes several changes, such as
+ * a commit, an import or an undo, are bracketed by GROUP_BEGIN and GROUP_END
+ * and published together when the group ends. Followers apply a group only
+ * once all of it has arrived, so they never show an operation half done.
+ *
+ * Only one thread appends at a time, without taking a lock, so a replicated
+ * gradebook must be changed from one thread at a time (see
+ * {@link ReplicationLeader}). Follower sender threads read what has been
+ * published and only lock to wait for more.
+ */
+final class ReplicationLog {
+    static final byte STUDENT_ADDED = 1;
+    static final byte STUDENT_REMOVED = 2;
+    static final byte GRADE_ADDED = 3;
+    static final byte GRADE_DROPPED = 4;
+    static final byte SCHEME_SET = 5;
+    static final byte CURVE_SET = 6;
+    static final byte LOGGED = 7;
+    /** Starts a snapshot: the follower clears its state. */
+    static final byte RESET = 8;
+    /** Ends a snapshot with the sequence number it brings the follower up to. */
+    static final byte SEQUENCE = 9;
+    /** The leader's latest sequence number, sent after every batch and when idle. */
+    static final byte HEARTBEAT = 10;
+    /** Starts the entries of one operation, which followers apply as a unit. */
+    static final byte GROUP_BEGIN = 11;
+    static final byte GROUP_END = 12;
+    static final byte TREND_WINDOW_SET = 13;
+
+    /** Activity-log lines carried in a snapshot, enough for LOG on a fresh follower. */
+    static final int SNAPSHOT_LOG_LINES = 100;
+    static final long SNAPSHOT_NEEDED = -2;
+    static final long CLOSED = -1;
+    private static final int HEARTBEAT_BYTES = 1 + 1 + Long.BYTES;
+
+    record Snapshot(byte[] frames, long sequence) {
+    }
+
+    /**
+     * The entries since one snapshot. Only the leader's thread writes; count is
+     * published after the entries it covers, so readers need no lock.
+     */
+    private static final class Segment {
+        final Snapshot snapshot;
+        volatile byte[][] entries = new byte[1024][];
+        volatile int count;
+
+        Segment(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+
+    private final int maxEntries;
+    private final Object signal = new Object();
+    private volatile Segment segment = new Segment(new Snapshot(new byte[0], 0));
+    private volatile int waiters;
+    private volatile boolean closed;
+    private ByteBuffer scratch = ByteBuffer.allocate(256);
+    private ByteBuffer snapshotFrames;
+    private int snapshotEntries;
+    private int groupDepth;
+    private int unpublished;
+
+    ReplicationLog(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    void studentAdded(String name) {
+        begin(STUDENT_ADDED);
+        putString(name);
+        end();
+    }
+
+    void studentRemoved(String name) {
+        begin(STUDENT_REMOVED);
+        putString(name);
+        end();
+    }
+
+    void gradeAdded(String name, int grade, String category) {
+        begin(GRADE_ADDED);
+        putString(name);
+        scratch.put((byte) grade);
+        putString(category);
+        end();
+    }
+
+    void gradeDropped(String name) {
+        begin(GRADE_DROPPED);
+        putString(name);
+        end();
+    }
+
+    void schemeSet(GradingScheme scheme) {
+        begin(SCHEME_SET);
+        putString(scheme.toString());
+        end();
+    }
+
+    void curveSet(double scale, double offset) {
+        begin(CURVE_SET);
+        scratch.putDouble(scale).putDouble(offset);
+        end();
+    }
+
+    void trendWindowSet(int grades) {
+        begin(TREND_WINDOW_SET);
+        scratch.putInt(grades);
+        end();
+    }
+
+    void logged(String line) {
+        begin(LOGGED);
+        putString(line);
+        end();
+    }
+
+    /**
+     * Starts a group of entries that followers apply together. Groups nest;
+     * only the outermost one is written.
+     */
+    void beginGroup() {
+        if (groupDepth++ == 0) {
+            begin(GROUP_BEGIN);
+            end();
+        }
+    }
+
+    /**
+     * Ends a group and, at the outermost level, publishes all of its entries at once.
+     */
+    void endGroup() {
+        if (--groupDepth == 0) {
+            begin(GROUP_END);
+            end();
+            publish();
+        }
+    }
+
+    /**
+     * True once the log holds at least its maximum number of entries and at
+     * least as many as the last snapshot took, so snapshots cost O(1) per
+     * change however large the gradebook grows. Never inside a group, whose
+     * state is only half changed.
+     */
+    boolean snapshotDue() {
+        int count = segment.count;
+        return groupDepth == 0 && count >= maxEntries && count >= snapshotEntries;
+    }
+
+    /**
+     * Collects the entries the leader writes next into a snapshot, until {@link #endSnapshot()}.
+     */
+    void beginSnapshot() {
+        snapshotFrames = ByteBuffer.allocate(1 << 16);
+        snapshotEntries = 0;
+        begin(RESET);
+        end();
+    }
+
+    void endSnapshot() {
+        long sequence = sequence();
+        begin(SEQUENCE);
+        scratch.putLong(sequence);
+        end();
+        var frames = Arrays.copyOf(snapshotFrames.array(), snapshotFrames.position());
+        snapshotFrames = null;
+        segment = new Segment(new Snapshot(frames, sequence));
+        wakeReaders();
+    }
+
+    Snapshot snapshot() {
+        return segment.snapshot;
+    }
+
+    /**
+     * Number of entries ever appended; the next entry gets this sequence number.
+     */
+    long sequence() {
+        var current = segment;
+        return current.snapshot.sequence() + current.count;
+    }
+
+    /**
+     * Waits up to timeoutMillis for entries from sequence number next on, then
+     * copies as many whole frames as fit into out, followed by a HEARTBEAT
+     * frame carrying the log's sequence number at that moment.
+     *
+     * @return the sequence number after the last frame copied;
+     *         {@link #SNAPSHOT_NEEDED} if next is older than the log, so the
+     *         caller must send the snapshot; or {@link #CLOSED}
+     */
+    long read(long next, ByteBuffer out, long timeoutMillis) throws InterruptedException {
+        if (timeoutMillis > 0 && !closed && next >= snapshot().sequence() && next >= sequence()) {
+            synchronized (signal) {
+                waiters++;
+                try {
+                    if (!closed && next >= sequence()) {
+                        signal.wait(timeoutMillis);
+                    }
+                } finally {
+                    waiters--;
+                }
+            }
+        }
+        if (closed) {
+            return CLOSED;
+        }
+        var current = segment;
+        long first = current.snapshot.sequence();
+        if (next < first) {
+            return SNAPSHOT_NEEDED;
+        }
+        int count = current.count;
+        var entries = current.entries;
+        int index = (int) (next - first);
+        int room = out.remaining() - HEARTBEAT_BYTES;
+        while (index < count && entries[index].length <= room) {
+            out.put(entries[index]);
+            room -= entries[index++].length;
+        }
+        BinaryProtocol.writeVarint(out, 1 + Long.BYTES);
+        out.put(HEARTBEAT).putLong(first + count);
+        return first + index;
+    }
+
+    /**
+     * Returns one entry's frame, for a frame too large to batch, or null if it is not in the log.
+     */
+    byte[] entry(long sequence) {
+        var current = segment;
+        long index = sequence - current.snapshot.sequence();
+        int count = current.count;
+        return index >= 0 && index < count ? current.entries[(int) index] : null;
+    }
+
+    void close() {
+        closed = true;
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = BinaryProtocol.readVarint(in);
+        var value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private void begin(byte kind) {
+        scratch.clear();
+        scratch.put(kind);
+    }
+
+    private void putString(String value) {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (scratch.remaining() < 5 + bytes.length + Long.BYTES * 2) {
+            var larger = ByteBuffer.allocate(Math.max(scratch.capacity() * 2, scratch.position() + bytes.length + 32));
+            scratch = larger.put(scratch.flip());
+        }
+        BinaryProtocol.writeVarint(scratch, bytes.length);
+        scratch.put(bytes);
+    }
+
+    private void end() {
+        scratch.flip();
+        if (snapshotFrames != null) {
+            if (snapshotFrames.remaining() < 5 + scratch.remaining()) {
+                var larger = ByteBuffer.allocate(Math.max(snapshotFrames.capacity() * 2,
+                        snapshotFrames.position() + 5 + scratch.remaining()));
+                snapshotFrames = larger.put(snapshotFrames.flip());
+            }
+            BinaryProtocol.writeVarint(snapshotFrames, scratch.remaining());
+            snapshotFrames.put(scratch);
+            snapshotEntries++;
+            return;
+        }
+        int length = scratch.remaining();
+        int prefix = length < 0x80 ? 1 : length < 0x4000 ? 2 : length < 0x200000 ? 3 : length < 0x10000000 ? 4 : 5;
+        var bytes = new byte[prefix + length];
+        var frame = ByteBuffer.wrap(bytes);
+        BinaryProtocol.writeVarint(frame, length);
+        frame.put(scratch);
+        var current = segment;
+        int index = current.count + unpublished;
+        if (index == current.entries.length) {
+            current.entries = Arrays.copyOf(current.entries, index * 2);
+        }
+        current.entries[index] = bytes;
+        unpublished++;
+        if (groupDepth == 0) {
+            publish();
+        }
+    }
+
+    /**
+     * Makes the entries appended since the last publish visible to readers.
+     */
+    private void publish() {
+        var current = segment;
+        current.count += unpublished;
+        unpublished = 0;
+        if (waiters > 0) {
+            wakeReaders();
+        }
+    }
+
+    private void wakeReaders() {
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package edu.course.gradebook;
+
+/**
+ * The order in which {@link Gradebook#reportAll(java.nio.channels.WritableByteChannel, ReportOrder)} lists students.
+ */
+public enum ReportOrder {
+    /** Whatever order the gradebook stores students in; needs no extra memory. */
+    UNSORTED,
+    /** Alphabetical by name. */
+    NAME,
+    /** Highest average first; students without an average come last, by name. */
+    AVERAGE
+}
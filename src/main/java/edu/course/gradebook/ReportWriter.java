@@ -0,0 +1,131 @@
+package edu.course.gradebook;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Encodes one line per student straight into a reused direct buffer that is
+ * flushed to a channel whenever it fills up.
+ *
+ * A line reads {@code name [g1, g2, ...] average letter}, with the average
+ * rounded half up to two decimals and {@code N/A N/A} for a student without
+ * an average. Names, numbers and letters are encoded as UTF-8 byte by byte,
+ * so writing a line creates no objects.
+ */
+final class ReportWriter {
+    static final int BUFFER_SIZE = 1 << 16;
+    private static final int LONGEST_NUMBER = 20;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private WritableByteChannel out;
+
+    void begin(WritableByteChannel out) {
+        this.out = out;
+        buffer.clear();
+    }
+
+    void writeStudent(String name, StudentGrades grades, double average, String letter) throws IOException {
+        writeString(name);
+        writeAscii(" [");
+        for (int i = 0; i < grades.size(); i++) {
+            if (i > 0) {
+                writeAscii(", ");
+            }
+            writeLong(grades.get(i));
+        }
+        writeAscii("] ");
+        if (Double.isNaN(average)) {
+            writeAscii("N/A N/A");
+        } else {
+            long hundredths = Math.round(average * 100);
+            writeLong(hundredths / 100);
+            writeByte((byte) '.');
+            if (hundredths % 100 < 10) {
+                writeByte((byte) '0');
+            }
+            writeLong(hundredths % 100);
+            writeByte((byte) ' ');
+            writeString(letter);
+        }
+        writeByte((byte) '\n');
+    }
+
+    /**
+     * Writes out whatever is buffered and releases the channel.
+     */
+    void finish() throws IOException {
+        flush();
+        out = null;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            if (out.write(buffer) < 0) {
+                throw new EOFException("Channel closed while writing");
+            }
+        }
+        buffer.clear();
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (buffer.remaining() < LONGEST_NUMBER) {
+            flush();
+        }
+        if (value < 10) {
+            buffer.put((byte) ('0' + value));
+            return;
+        }
+        long divisor = 10;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + value / divisor % 10));
+        }
+    }
+
+    private void writeAscii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            writeByte((byte) text.charAt(i));
+        }
+    }
+
+    private void writeString(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            int c = text.charAt(i);
+            if (c < 0x80) {
+                writeByte((byte) c);
+                continue;
+            }
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6));
+            } else if (!Character.isSurrogate((char) c)) {
+                buffer.put((byte) (0xE0 | c >> 12));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+            } else if (Character.isHighSurrogate((char) c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                c = Character.toCodePoint((char) c, text.charAt(++i));
+                buffer.put((byte) (0xF0 | c >> 18));
+                buffer.put((byte) (0x80 | c >> 12 & 0x3F));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+            } else {
+                buffer.put((byte) '?');
+                continue;
+            }
+            buffer.put((byte) (0x80 | c & 0x3F));
+        }
+    }
+
+    private void writeByte(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put(b);
+    }
+}
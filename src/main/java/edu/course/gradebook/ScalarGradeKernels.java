@@ -0,0 +1,45 @@
+package edu.course.gradebook;
+
+import java.nio.IntBuffer;
+
+/**
+ * Plain loops, used when the Vector API is unavailable.
+ */
+final class ScalarGradeKernels implements GradeKernels {
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public void accumulate(int[] total, IntBuffer histogram) {
+        if (histogram.hasArray()) {
+            var source = histogram.array();
+            int offset = histogram.arrayOffset();
+            for (int grade = 0; grade < HISTOGRAM_LENGTH; grade++) {
+                total[grade] += source[offset + grade];
+            }
+            return;
+        }
+        for (int grade = 0; grade < HISTOGRAM_LENGTH; grade++) {
+            total[grade] += histogram.get(grade);
+        }
+    }
+
+    @Override
+    public void moments(int[] histogram, double[] result) {
+        double count = 0.0;
+        double sum = 0.0;
+        double squares = 0.0;
+        for (int grade = 0; grade < HISTOGRAM_LENGTH; grade++) {
+            double tally = histogram[grade];
+            count += tally;
+            sum += tally * grade;
+            squares += tally * grade * grade;
+        }
+        result[0] = count;
+        result[1] = sum;
+        result[2] = squares;
+    }
+}
@@ -0,0 +1,157 @@
+package edu.course.gradebook;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the heap and off-heap grade storage: heap held once the
+ * gradebook is loaded, garbage collection while loading and querying, and
+ * the latency of single-student queries. Heap held includes the activity
+ * log and undo history, one entry per student for either storage.
+ *
+ * Run each storage in its own JVM so one run's heap and JIT state don't
+ * leak into the other, with the same heap settings for both:
+ *
+ * <pre>
+ * java -Xmx2g -cp target/classes edu.course.gradebook.StorageBenchmark --storage=heap
+ * java -Xmx2g -cp target/classes edu.course.gradebook.StorageBenchmark --storage=off-heap
+ *         [--students=N] [--grades=N] [--queries=N] [--seed=N]
+ * </pre>
+ */
+public final class StorageBenchmark {
+    private StorageBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        var storage = GradeStorage.HEAP;
+        int students = 100_000;
+        int grades = 50;
+        int queries = 1_000_000;
+        long seed = 28;
+        for (var arg : args) {
+            if (arg.startsWith("--storage=")) {
+                try {
+                    storage = GradeStorage.fromOption(arg.substring("--storage=".length()));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Unknown option: " + arg + " (expected heap or off-heap)");
+                    return;
+                }
+            } else if (arg.startsWith("--students=")) {
+                students = Integer.parseInt(arg.substring("--students=".length()));
+            } else if (arg.startsWith("--grades=")) {
+                grades = Integer.parseInt(arg.substring("--grades=".length()));
+            } else if (arg.startsWith("--queries=")) {
+                queries = Integer.parseInt(arg.substring("--queries=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else {
+                System.out.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        run(storage, students, grades, queries, seed);
+    }
+
+    private static void run(GradeStorage storage, int students, int grades, int queries, long seed) {
+        var random = new Random(seed);
+        long heapBefore = settledHeap();
+        long directBefore = directMemory();
+
+        var gc = new GcCounter();
+        var gradebook = new Gradebook(storage);
+        // One log entry per student rather than per grade, so the activity log stays small next to the grades
+        var studentGrades = new ArrayList<Integer>(grades);
+        for (int s = 0; s < students; s++) {
+            studentGrades.clear();
+            for (int g = 0; g < grades; g++) {
+                studentGrades.add(random.nextInt(101));
+            }
+            gradebook.addStudent("Student" + s, studentGrades);
+        }
+        var loadGc = gc.sinceLast();
+        long heap = settledHeap() - heapBefore;
+        long direct = directMemory() - directBefore;
+
+        var names = new String[students];
+        for (int s = 0; s < students; s++) {
+            names[s] = "Student" + s;
+        }
+        // Warm the query path up before timing it
+        for (int q = 0; q < Math.min(queries, 200_000); q++) {
+            gradebook.averageFor(names[random.nextInt(students)]);
+        }
+        gc.sinceLast();
+        var latencies = new long[queries];
+        for (int q = 0; q < queries; q++) {
+            var name = names[random.nextInt(students)];
+            long start = System.nanoTime();
+            gradebook.averageFor(name);
+            latencies[q] = System.nanoTime() - start;
+        }
+        var queryGc = gc.sinceLast();
+        Arrays.sort(latencies);
+
+        System.out.printf("Storage %s, %d students x %d grades, %d queries%n",
+                storage.option(), students, grades, queries);
+        System.out.printf("  Heap held: %.1f MiB, direct memory: %.1f MiB%n", heap / 1048576.0, direct / 1048576.0);
+        System.out.printf("  GC while loading: %d collections, %d ms%n", loadGc[0], loadGc[1]);
+        System.out.printf("  GC while querying: %d collections, %d ms%n", queryGc[0], queryGc[1]);
+        System.out.printf("  Query latency (ns): p50 %d, p99 %d, p99.9 %d, max %d%n", percentile(latencies, 0.5),
+                percentile(latencies, 0.99), percentile(latencies, 0.999), latencies[latencies.length - 1]);
+        // Keep the gradebook reachable until everything is measured
+        if (gradebook.classAverage().isEmpty() && students > 0 && grades > 0) {
+            throw new IllegalStateException("Gradebook lost its grades");
+        }
+    }
+
+    /**
+     * Collection counts and times summed over every collector, reported as the change since the last call.
+     */
+    private static final class GcCounter {
+        private long count;
+        private long millis;
+
+        GcCounter() {
+            sinceLast();
+        }
+
+        long[] sinceLast() {
+            long totalCount = 0;
+            long totalMillis = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                totalCount += Math.max(0, collector.getCollectionCount());
+                totalMillis += Math.max(0, collector.getCollectionTime());
+            }
+            var delta = new long[] {totalCount - count, totalMillis - millis};
+            count = totalCount;
+            millis = totalMillis;
+            return delta;
+        }
+    }
+
+    private static long settledHeap() {
+        var memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static long directMemory() {
+        for (var pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+}
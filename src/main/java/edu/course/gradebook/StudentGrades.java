@@ -0,0 +1,98 @@
+package edu.course.gradebook;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * One student's grades as stored by a {@link GradeStore}.
+ *
+ * The list view is what {@link Gradebook#findStudentGrades(String)} exposes;
+ * Gradebook itself only changes grades through {@link #append(int, int)} and
+ * {@link #dropLast()}, which keep the running aggregates in step. A packed
+ * student ({@link #isPacked()}) is read-only, so Gradebook swaps it for a
+ * mutable copy before either call.
+ */
+interface StudentGrades extends List<Integer> {
+
+    /**
+     * @throws UnsupportedOperationException if the grades are packed
+     */
+    void append(int grade, int category);
+
+    /**
+     * Removes the most recently recorded grade and returns it.
+     *
+     * @throws NoSuchElementException if there are no grades
+     * @throws UnsupportedOperationException if the grades are packed
+     */
+    int dropLast();
+
+    int categoryAt(int index);
+
+    GradeStats overall();
+
+    /**
+     * Returns the aggregates for a category, or null if no grade was ever filed under it.
+     */
+    GradeStats category(int category);
+
+    /**
+     * Number of grades filed under a category, without building aggregates a packed form doesn't keep.
+     */
+    default int categoryCount(int category) {
+        var stats = category(category);
+        return stats == null ? 0 : stats.count();
+    }
+
+    default long categorySum(int category) {
+        var stats = category(category);
+        return stats == null ? 0 : stats.sum();
+    }
+
+    /**
+     * Aggregates over the most recent grades.
+     */
+    GradeWindow window();
+
+    /**
+     * Rebuilds {@link #window()} over the given number of most recent grades.
+     */
+    void resizeWindow(int length);
+
+    /**
+     * Sum of all grades, without building aggregates a packed form doesn't keep.
+     */
+    default long gradeSum() {
+        return overall().sum();
+    }
+
+    /**
+     * The {@link System#nanoTime()} of the last grade change, or of creation.
+     */
+    long lastModified();
+
+    default boolean isPacked() {
+        return false;
+    }
+
+    /**
+     * Returns any storage outside the heap to its store. Gradebook calls this
+     * once a removed student can no longer come back through undo; the grades
+     * must not be used afterwards.
+     */
+    default void release() {
+    }
+
+    /**
+     * Estimated heap bytes held by this student's grades.
+     */
+    long estimatedBytes();
+
+    /**
+     * The gradebook-wide change number of this student's last change, used to
+     * validate transactions (see {@link Transaction}).
+     */
+    long version();
+
+    void setVersion(long version);
+}
@@ -0,0 +1,62 @@
+package edu.course.gradebook;
+
+import java.util.Objects;
+
+/**
+ * A reusable snapshot of one student's grades, average and letter grade.
+ *
+ * {@link Gradebook#summarize(String, StudentSummary)} fills it with a single
+ * lookup. The grade array only grows, so filling the same summary again for
+ * students with no more grades than before allocates nothing.
+ */
+public final class StudentSummary {
+    private String name;
+    private int[] grades = new int[16];
+    private int gradeCount;
+    private double average = Double.NaN;
+    private String letterGrade;
+
+    public String name() {
+        return name;
+    }
+
+    public int gradeCount() {
+        return gradeCount;
+    }
+
+    public int grade(int index) {
+        return grades[Objects.checkIndex(index, gradeCount)];
+    }
+
+    public boolean hasAverage() {
+        return !Double.isNaN(average);
+    }
+
+    /**
+     * The curved average under the grading scheme, or NaN if no grade counts towards it.
+     */
+    public double average() {
+        return average;
+    }
+
+    /**
+     * The letter grade, or null if there is no average.
+     */
+    public String letterGrade() {
+        return letterGrade;
+    }
+
+    void fill(String name, StudentGrades source, double average, String letterGrade) {
+        this.name = name;
+        int size = source.size();
+        if (size > grades.length) {
+            grades = new int[Math.max(size, grades.length * 2)];
+        }
+        for (int i = 0; i < size; i++) {
+            grades[i] = source.get(i);
+        }
+        gradeCount = size;
+        this.average = average;
+        this.letterGrade = letterGrade;
+    }
+}
@@ -0,0 +1,68 @@
+package edu.course.gradebook;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+/**
+ * Describes a generated command trace for {@link TraceReplay}.
+ *
+ * The trace first adds every student, then issues the given number of
+ * operations: a readFraction share of REPORT commands and the rest ADD_GRADE
+ * commands. Students are picked with Zipfian popularity (exponent 0 is
+ * uniform, around 1 is typical of real access patterns), and operations
+ * arrive as a Poisson process at operationsPerSecond. The same seed always
+ * produces the same trace.
+ */
+public record SyntheticTrace(int students, long operations, double readFraction, double zipfExponent,
+                             double operationsPerSecond, long seed) {
+
+    public SyntheticTrace {
+        if (students <= 0 || operations < 0) {
+            throw new IllegalArgumentException("Need at least one student and a non-negative operation count");
+        }
+        if (!(readFraction >= 0 && readFraction <= 1)) {
+            throw new IllegalArgumentException("Read fraction must be between 0 and 1");
+        }
+        if (!(operationsPerSecond > 0)) {
+            throw new IllegalArgumentException("Operation rate must be positive");
+        }
+    }
+
+    /**
+     * Writes the trace to a file, replacing it.
+     *
+     * @return the number of records written
+     */
+    public long writeTo(Path file) throws IOException {
+        var random = new SplittableRandom(seed);
+        var popularity = new ZipfSampler(students, zipfExponent);
+        double meanGapNanos = 1e9 / operationsPerSecond;
+        long records = 0;
+        double nanos = 0;
+        try (var trace = new TraceWriter(FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))) {
+            for (int i = 0; i < students; i++) {
+                trace.record((long) nanos, Command.ADD_STUDENT, name(i));
+                records++;
+            }
+            for (long i = 0; i < operations; i++) {
+                nanos += -Math.log(1.0 - random.nextDouble()) * meanGapNanos;
+                var student = name(popularity.next(random));
+                if (random.nextDouble() < readFraction) {
+                    trace.record((long) nanos, Command.REPORT, student);
+                } else {
+                    trace.record((long) nanos, Command.ADD_GRADE, student + " " + random.nextInt(50, 101));
+                }
+                records++;
+            }
+        }
+        return records;
+    }
+
+    private static String name(int index) {
+        return "student" + index;
+    }
+}
@@ -0,0 +1,83 @@
+package edu.course.gradebook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads back the records written by {@link TraceWriter}, one buffer refill at a time.
+ */
+final class TraceReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel in;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final Command[] commands = Command.values();
+    private boolean endOfInput;
+    private long offsetMicros;
+
+    /**
+     * @throws IllegalArgumentException if the channel does not start with a trace header
+     */
+    TraceReader(ReadableByteChannel in) throws IOException {
+        this.in = in;
+        buffer.flip();
+        fill();
+        if (buffer.remaining() < 5 || buffer.getInt() != TraceWriter.MAGIC) {
+            throw new IllegalArgumentException("Not a command trace");
+        }
+        if (buffer.get() != TraceWriter.VERSION) {
+            throw new IllegalArgumentException("Unsupported command trace version");
+        }
+    }
+
+    /**
+     * Returns the next record, or null at the end of the trace.
+     *
+     * @throws IllegalArgumentException if the trace is truncated or corrupt
+     */
+    TraceRecord next() throws IOException {
+        fill();
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+        try {
+            offsetMicros += BinaryProtocol.readVarint(buffer);
+            int ordinal = buffer.get();
+            int length = BinaryProtocol.readVarint(buffer);
+            if (ordinal < 0 || ordinal >= commands.length || length < 0 || length > buffer.remaining()) {
+                throw new IllegalArgumentException("Corrupt command trace");
+            }
+            var arguments = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return new TraceRecord(offsetMicros, commands[ordinal], arguments);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated command trace");
+        }
+    }
+
+    /**
+     * Tops the buffer up until it holds a whole record or the input ends.
+     */
+    private void fill() throws IOException {
+        if (buffer.remaining() >= TraceWriter.MAX_RECORD_BYTES || endOfInput) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < TraceWriter.MAX_RECORD_BYTES && !endOfInput) {
+            if (in.read(buffer) < 0) {
+                endOfInput = true;
+            }
+        }
+        buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
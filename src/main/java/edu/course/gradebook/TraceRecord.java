@@ -0,0 +1,8 @@
+package edu.course.gradebook;
+
+/**
+ * One recorded command: when it was entered, relative to the start of the
+ * trace, and everything on the line after the command word.
+ */
+record TraceRecord(long offsetMicros, Command command, String arguments) {
+}
@@ -0,0 +1,241 @@
+package edu.course.gradebook;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a command trace (recorded with {@code --trace=<file>} or generated by
+ * {@link SyntheticTrace}) back against a {@link Gradebook} and measures it.
+ *
+ * Commands call the Gradebook API directly, without Main's parsing and
+ * printing. REPORT_ALL writes to a sink that discards the output. IMPORT,
+ * EXPORT and CURVE are counted as skipped, so a replay never reads or
+ * overwrites files.
+ *
+ * <pre>
+ * java -cp target/classes edu.course.gradebook.TraceReplay generate &lt;file&gt; [--students=N] [--operations=N]
+ *         [--reads=&lt;fraction&gt;] [--zipf=&lt;exponent&gt;] [--rate=&lt;ops per second&gt;] [--seed=N]
+ * java -cp target/classes edu.course.gradebook.TraceReplay replay &lt;file&gt; [--pace=original|max|&lt;N&gt;x]
+ *         [--storage=heap|off-heap]
+ * </pre>
+ */
+public final class TraceReplay {
+    /** Replays as fast as possible, ignoring the recorded timing. */
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+    private static final WritableByteChannel DISCARD = new WritableByteChannel() {
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            src.position(src.limit());
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final Gradebook gradebook;
+    private final StudentSummary summary = new StudentSummary();
+    private Transaction transaction;
+
+    private TraceReplay(Gradebook gradebook) {
+        this.gradebook = gradebook;
+    }
+
+    /**
+     * Replays a trace against a gradebook.
+     *
+     * @param speed 1 for the recorded pace, N to run N times faster, or {@link #MAX_SPEED}
+     * @throws IllegalArgumentException if the speed is not positive or the file is not a valid trace
+     */
+    public static ReplayReport replay(Path trace, Gradebook gradebook, double speed) throws IOException {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Replay speed must be positive");
+        }
+        var replay = new TraceReplay(gradebook);
+        var latencies = new long[1024];
+        long operations = 0;
+        long skipped = 0;
+        try (var reader = new TraceReader(FileChannel.open(trace, StandardOpenOption.READ))) {
+            long start = System.nanoTime();
+            for (var record = reader.next(); record != null; record = reader.next()) {
+                long due = start;
+                if (speed != MAX_SPEED) {
+                    due += (long) (record.offsetMicros() * 1_000 / speed);
+                    for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                long begin = System.nanoTime();
+                if (!replay.execute(record.command(), record.arguments())) {
+                    skipped++;
+                    continue;
+                }
+                long end = System.nanoTime();
+                if (operations == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, latencies.length * 2);
+                }
+                latencies[(int) operations++] = end - (speed == MAX_SPEED ? begin : due);
+            }
+            long elapsed = System.nanoTime() - start;
+            Arrays.sort(latencies, 0, (int) operations);
+            return new ReplayReport(operations, skipped, elapsed, percentile(latencies, operations, 0.5),
+                    percentile(latencies, operations, 0.9), percentile(latencies, operations, 0.99),
+                    percentile(latencies, operations, 0.999), operations == 0 ? 0 : latencies[(int) operations - 1]);
+        }
+    }
+
+    private static long percentile(long[] sorted, long count, double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(fraction * count);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Runs one command; returns false if replay does not execute this command.
+     */
+    private boolean execute(Command command, String arguments) throws IOException {
+        try {
+            switch (command) {
+                case ADD_STUDENT -> {
+                    if (transaction != null) {
+                        transaction.addStudent(arguments);
+                    } else {
+                        gradebook.addStudent(arguments);
+                    }
+                }
+                case ADD_GRADE -> {
+                    var parts = arguments.split("\\s+", 3);
+                    var grade = Integer.parseInt(parts[1]);
+                    var category = parts.length > 2 ? parts[2] : GradingScheme.DEFAULT_CATEGORY;
+                    if (transaction != null) {
+                        transaction.addGrade(parts[0], category, grade);
+                    } else {
+                        gradebook.addGrade(parts[0], category, grade);
+                    }
+                }
+                case REMOVE_STUDENT -> {
+                    if (transaction != null) {
+                        transaction.removeStudent(arguments);
+                    } else {
+                        gradebook.removeStudent(arguments);
+                    }
+                }
+                case REPORT -> gradebook.summarize(arguments, summary);
+                case CLASS_REPORT -> gradebook.classAverageAsDouble();
+                case UNDO -> gradebook.undo();
+                case LOG -> gradebook.recentLog(10);
+                case SCHEME -> {
+                    if (!arguments.isBlank()) {
+                        gradebook.setGradingScheme(GradingScheme.parse(arguments));
+                    }
+                }
+                case STATS -> {
+                    if (arguments.isBlank()) {
+                        gradebook.classDistribution();
+                        gradebook.letterDistribution();
+                    } else {
+                        gradebook.distributionFor(arguments);
+                    }
+                }
+                case COMPACT -> gradebook.compactIdleStudents(arguments.isBlank()
+                        ? gradebook.coldAfter().orElse(Duration.ZERO)
+                        : Duration.ofSeconds(Long.parseLong(arguments)));
+                case BEGIN -> {
+                    if (transaction == null) {
+                        transaction = gradebook.begin();
+                    }
+                }
+                case COMMIT, ROLLBACK -> {
+                    if (transaction != null) {
+                        if (command == Command.COMMIT) {
+                            transaction.commit();
+                        } else {
+                            transaction.rollback();
+                        }
+                        transaction = null;
+                    }
+                }
+                case REPORT_ALL -> {
+                    var order = arguments.toUpperCase().startsWith("AVERAGE") ? ReportOrder.AVERAGE
+                            : arguments.toUpperCase().startsWith("NAME") ? ReportOrder.NAME : ReportOrder.UNSORTED;
+                    gradebook.reportAll(DISCARD, order);
+                }
+                default -> {
+                    return false;
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            // Malformed arguments fail the same way they did when recorded; the command still counts.
+        }
+        return true;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !(args[0].equals("generate") || args[0].equals("replay"))) {
+            System.out.println("Usage: TraceReplay generate <file> [--students=N] [--operations=N] [--reads=<fraction>]"
+                    + " [--zipf=<exponent>] [--rate=<ops per second>] [--seed=N]");
+            System.out.println("       TraceReplay replay <file> [--pace=original|max|<N>x] [--storage=heap|off-heap]");
+            return;
+        }
+        var file = Path.of(args[1]);
+        int students = 10_000;
+        long operations = 1_000_000;
+        double reads = 0.8;
+        double zipf = 0.99;
+        double rate = 100_000;
+        long seed = 1;
+        double speed = 1.0;
+        var storage = GradeStorage.HEAP;
+        for (int i = 2; i < args.length; i++) {
+            var arg = args[i];
+            var value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--students=")) {
+                students = Integer.parseInt(value);
+            } else if (arg.startsWith("--operations=")) {
+                operations = Long.parseLong(value);
+            } else if (arg.startsWith("--reads=")) {
+                reads = Double.parseDouble(value);
+            } else if (arg.startsWith("--zipf=")) {
+                zipf = Double.parseDouble(value);
+            } else if (arg.startsWith("--rate=")) {
+                rate = Double.parseDouble(value);
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(value);
+            } else if (arg.startsWith("--pace=")) {
+                speed = switch (value) {
+                    case "original" -> 1.0;
+                    case "max" -> MAX_SPEED;
+                    default -> Double.parseDouble(value.endsWith("x") ? value.substring(0, value.length() - 1) : value);
+                };
+            } else if (arg.startsWith("--storage=")) {
+                storage = GradeStorage.fromOption(value);
+            } else {
+                System.out.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        if (args[0].equals("generate")) {
+            var records = new SyntheticTrace(students, operations, reads, zipf, rate, seed).writeTo(file);
+            System.out.println("Wrote " + records + " commands to " + file);
+        } else {
+            System.out.println(replay(file, new Gradebook(storage), speed));
+        }
+    }
+}
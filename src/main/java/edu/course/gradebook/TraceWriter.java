@@ -0,0 +1,84 @@
+package edu.course.gradebook;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Appends commands to a compact binary trace that {@link TraceReplay} can play back.
+ *
+ * A trace starts with the magic number {@code GBTR} and a version byte. Each
+ * record is then a varint of microseconds since the previous record, the
+ * command's ordinal as one byte, and the varint-length-prefixed UTF-8
+ * arguments. Ordinals stay stable because new commands are added before EXIT,
+ * which is never recorded. Records are buffered and written out when the
+ * buffer fills and on {@link #close()}.
+ */
+final class TraceWriter implements Closeable {
+    static final int MAGIC = 0x47425452;
+    static final byte VERSION = 1;
+    static final int MAX_ARGUMENT_BYTES = 4096;
+    static final int MAX_RECORD_BYTES = 5 + 1 + 5 + MAX_ARGUMENT_BYTES;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel out;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long firstNanos = -1;
+    private long lastMicros;
+
+    TraceWriter(WritableByteChannel out) {
+        this.out = out;
+        buffer.putInt(MAGIC).put(VERSION);
+    }
+
+    /**
+     * Records a command entered at the given {@link System#nanoTime()}.
+     *
+     * @return false, recording nothing, for EXIT, UNKNOWN or arguments longer than 4 KiB
+     */
+    boolean record(long nanos, Command command, String arguments) throws IOException {
+        if (command == Command.EXIT || command == Command.UNKNOWN) {
+            return false;
+        }
+        var bytes = arguments.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_ARGUMENT_BYTES) {
+            return false;
+        }
+        if (firstNanos < 0) {
+            firstNanos = nanos;
+        }
+        long micros = (nanos - firstNanos) / 1_000;
+        long delta = Math.min(Integer.MAX_VALUE, Math.max(0, micros - lastMicros));
+        lastMicros += delta;
+        if (buffer.remaining() < MAX_RECORD_BYTES) {
+            flush();
+        }
+        BinaryProtocol.writeVarint(buffer, (int) delta);
+        buffer.put((byte) command.ordinal());
+        BinaryProtocol.writeVarint(buffer, bytes.length);
+        buffer.put(bytes);
+        return true;
+    }
+
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            if (out.write(buffer) < 0) {
+                throw new EOFException("Channel closed while writing");
+            }
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package edu.course.gradebook;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A batch of changes that is applied to a {@link Gradebook} all at once, or not at all.
+ *
+ * Changes are buffered in this object's private write set, and nothing is
+ * held while a transaction is open, so other changes and other transactions
+ * carry on in the meantime. The first time a transaction touches a student
+ * it records that student's version. {@link #commit()} checks that none of
+ * those versions changed in the meantime and then applies every change in
+ * one step. Undoing a committed transaction reverts all of its changes
+ * together, including removing students it added.
+ *
+ * Transactions add no locking: like the rest of Gradebook, a gradebook and
+ * its open transactions must be used from one thread at a time. Conflicts
+ * come from other changes made between a transaction's first read of a
+ * student and its commit.
+ */
+public final class Transaction {
+    static final long ABSENT = -1;
+
+    private enum Kind { ADD_STUDENT, ADD_GRADE, REMOVE_STUDENT }
+
+    private record Write(Kind kind, String name, String category, int grade) {
+    }
+
+    private final Gradebook gradebook;
+    private final List<Write> writes = new ArrayList<>();
+    private final Map<String, Long> readVersions = new HashMap<>();
+    private final Map<String, Boolean> present = new HashMap<>();
+    private boolean finished;
+
+    Transaction(Gradebook gradebook) {
+        this.gradebook = gradebook;
+    }
+
+    /**
+     * Buffers adding a student.
+     *
+     * @return false if the student already exists as seen by this transaction
+     */
+    public boolean addStudent(String name) {
+        if (exists(name)) {
+            return false;
+        }
+        buffer(new Write(Kind.ADD_STUDENT, name, null, 0));
+        present.put(name, true);
+        return true;
+    }
+
+    public boolean addGrade(String name, int grade) {
+        return addGrade(name, GradingScheme.DEFAULT_CATEGORY, grade);
+    }
+
+    /**
+     * Buffers adding a grade.
+     *
+     * @return false if the student does not exist as seen by this transaction
+     * @throws IllegalArgumentException if the grade is outside 0–100
+     */
+    public boolean addGrade(String name, String category, int grade) {
+        GradeStats.checkGrade(grade);
+        if (!exists(name)) {
+            return false;
+        }
+        buffer(new Write(Kind.ADD_GRADE, name, category, grade));
+        return true;
+    }
+
+    /**
+     * Buffers removing a student.
+     *
+     * @return false if the student does not exist as seen by this transaction
+     */
+    public boolean removeStudent(String name) {
+        if (!exists(name)) {
+            return false;
+        }
+        buffer(new Write(Kind.REMOVE_STUDENT, name, null, 0));
+        present.put(name, false);
+        return true;
+    }
+
+    /**
+     * Applies every buffered change if no student this transaction touched
+     * has changed since it was first touched.
+     *
+     * @return false on a conflict, in which case nothing was applied
+     * @throws IllegalStateException if the transaction was already committed or rolled back,
+     *         or it adds students and the gradebook's memory budget is used up; nothing is applied
+     * @throws IllegalArgumentException if its grades would bring the gradebook past 128
+     *         categories; nothing is applied
+     */
+    public boolean commit() {
+        checkOpen();
+        finished = true;
+        return gradebook.commit(readVersions, this);
+    }
+
+    /**
+     * Discards every buffered change.
+     */
+    public void rollback() {
+        checkOpen();
+        finished = true;
+        writes.clear();
+    }
+
+    /**
+     * Number of buffered changes.
+     */
+    public int size() {
+        return writes.size();
+    }
+
+    public boolean isOpen() {
+        return !finished;
+    }
+
+    /**
+     * Whether any buffered write adds a student, which the memory budget may refuse.
+     */
+    boolean addsStudents() {
+        for (var write : writes) {
+            if (write.kind() == Kind.ADD_STUDENT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Every category the buffered grades are filed under.
+     */
+    Set<String> gradeCategories() {
+        var categories = new HashSet<String>();
+        for (var write : writes) {
+            if (write.kind() == Kind.ADD_GRADE) {
+                categories.add(write.category());
+            }
+        }
+        return categories;
+    }
+
+    /**
+     * Applies the writes in order.
+     */
+    void applyTo(Gradebook target) {
+        for (var write : writes) {
+            switch (write.kind()) {
+                case ADD_STUDENT -> target.addStudentInTransaction(write.name());
+                case ADD_GRADE -> target.addGrade(write.name(), write.category(), write.grade());
+                case REMOVE_STUDENT -> target.removeStudent(write.name());
+            }
+        }
+    }
+
+    private boolean exists(String name) {
+        checkOpen();
+        var known = present.get(name);
+        if (known != null) {
+            return known;
+        }
+        long version = gradebook.versionOf(name);
+        readVersions.put(name, version);
+        present.put(name, version != ABSENT);
+        return version != ABSENT;
+    }
+
+    private void buffer(Write write) {
+        writes.add(write);
+    }
+
+    private void checkOpen() {
+        if (finished) {
+            throw new IllegalStateException("Transaction is already finished");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package edu.course.gradebook;
+
+import java.nio.IntBuffer;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD versions of the counting-array loops using the incubating Vector API.
+ *
+ * Counts are widened to doubles before multiplying so that sums of squares
+ * over millions of grades cannot overflow.
+ */
+final class VectorGradeKernels implements GradeKernels {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // Half-width int species, so one int vector widens into exactly one double vector
+    private static final VectorSpecies<Integer> NARROW_INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+    private static final double[] GRADES = new double[HISTOGRAM_LENGTH];
+
+    static {
+        for (int grade = 0; grade < HISTOGRAM_LENGTH; grade++) {
+            GRADES[grade] = grade;
+        }
+    }
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    private final ScalarGradeKernels scalar = new ScalarGradeKernels();
+
+    @Override
+    public String name() {
+        return "vector (" + DOUBLES.length() + " x double)";
+    }
+
+    /**
+     * Counting arrays on the heap are added a vector at a time. Off-heap ones
+     * use the scalar loop: loading a vector from direct memory needs the
+     * MemorySegment API, which is still a preview in Java 21.
+     */
+    @Override
+    public void accumulate(int[] total, IntBuffer histogram) {
+        if (!histogram.hasArray()) {
+            scalar.accumulate(total, histogram);
+            return;
+        }
+        var source = histogram.array();
+        int offset = histogram.arrayOffset();
+        int grade = 0;
+        for (int bound = INTS.loopBound(HISTOGRAM_LENGTH); grade < bound; grade += INTS.length()) {
+            IntVector.fromArray(INTS, total, grade)
+                    .add(IntVector.fromArray(INTS, source, offset + grade))
+                    .intoArray(total, grade);
+        }
+        for (; grade < HISTOGRAM_LENGTH; grade++) {
+            total[grade] += source[offset + grade];
+        }
+    }
+
+    @Override
+    public void moments(int[] histogram, double[] result) {
+        var count = DoubleVector.zero(DOUBLES);
+        var sum = DoubleVector.zero(DOUBLES);
+        var squares = DoubleVector.zero(DOUBLES);
+        int grade = 0;
+        for (int bound = DOUBLES.loopBound(HISTOGRAM_LENGTH); grade < bound; grade += DOUBLES.length()) {
+            var tally = (DoubleVector) IntVector.fromArray(NARROW_INTS, histogram, grade)
+                    .convertShape(VectorOperators.I2D, DOUBLES, 0);
+            var value = DoubleVector.fromArray(DOUBLES, GRADES, grade);
+            var weighted = tally.mul(value);
+            count = count.add(tally);
+            sum = sum.add(weighted);
+            squares = weighted.fma(value, squares);
+        }
+        double countTotal = count.reduceLanes(VectorOperators.ADD);
+        double sumTotal = sum.reduceLanes(VectorOperators.ADD);
+        double squaresTotal = squares.reduceLanes(VectorOperators.ADD);
+        for (; grade < HISTOGRAM_LENGTH; grade++) {
+            double tally = histogram[grade];
+            countTotal += tally;
+            sumTotal += tally * grade;
+            squaresTotal += tally * grade * grade;
+        }
+        result[0] = countTotal;
+        result[1] = sumTotal;
+        result[2] = squaresTotal;
+    }
+}
@@ -0,0 +1,12 @@
+package edu.course.gradebook;
+
+/**
+ * A student starting or stopping to match a {@link GradeWatch}.
+ *
+ * @param watch name of the watch
+ * @param student the student whose average changed
+ * @param matching true if the student now matches, false if they no longer do
+ * @param average the student's curved average after the change, or NaN if they have no grades
+ */
+public record WatchAlert(String watch, String student, boolean matching, double average) {
+}
@@ -0,0 +1,35 @@
+package edu.course.gradebook;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Draws ranks 0..n-1 with probability proportional to 1 / (rank + 1)^exponent,
+ * so a few ranks are drawn far more often than the rest. An exponent of 0 is uniform.
+ *
+ * The cumulative distribution is precomputed once; each draw is a binary search.
+ */
+final class ZipfSampler {
+    private final double[] cumulative;
+
+    ZipfSampler(int n, double exponent) {
+        if (n <= 0 || exponent < 0 || Double.isNaN(exponent)) {
+            throw new IllegalArgumentException("Zipf needs at least one rank and a non-negative exponent");
+        }
+        cumulative = new double[n];
+        double total = 0.0;
+        for (int rank = 0; rank < n; rank++) {
+            total += 1.0 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = total;
+        }
+        for (int rank = 0; rank < n; rank++) {
+            cumulative[rank] /= total;
+        }
+    }
+
+    int next(RandomGenerator random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+}
@@ -1,10 +1,46 @@
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
+import edu.course.gradebook.AlertDispatcher;
+import edu.course.gradebook.AuditLog;
+import edu.course.gradebook.BinaryProtocol;
+import edu.course.gradebook.GradeSketch;
+import edu.course.gradebook.GradeStorage;
+import edu.course.gradebook.GradeWatch;
+import edu.course.gradebook.GradebookNode;
 import edu.course.gradebook.Gradebook;
+import edu.course.gradebook.GradingScheme;
+import edu.course.gradebook.Main;
+import edu.course.gradebook.PartitionedGradebook;
+import edu.course.gradebook.ReplicationFollower;
+import edu.course.gradebook.ReplicationLeader;
+import edu.course.gradebook.ReportOrder;
+import edu.course.gradebook.StudentSummary;
+import edu.course.gradebook.SyntheticTrace;
+import edu.course.gradebook.TraceReplay;
+import edu.course.gradebook.WatchAlert;
 
 public class GradebookTest {
 
@@ -30,6 +66,9 @@ public class GradebookTest {
         assertTrue(gradebook.findStudentGrades("Bob").isPresent());
         assertEquals(2, gradebook.findStudentGrades("Bob").get().size());
         assertFalse(gradebook.addStudent("Bob", grades));
+        grades.add(101);
+        assertFalse(gradebook.addStudent("Cat", grades));
+        assertTrue(gradebook.findStudentGrades("Cat").isEmpty());
     }
 
     @Test
@@ -177,4 +216,1301 @@ public class GradebookTest {
         assertTrue(gradebook.classAverage().isPresent());
         assertEquals(85, gradebook.classAverage().get());
     }
-}   
+
+    @Test
+    public void testWeightedGradingScheme() {
+        gradebook.addStudent("Olga");
+        gradebook.addGrade("Olga", "homework", 100);
+        gradebook.addGrade("Olga", "homework", 80);
+        gradebook.addGrade("Olga", "exams", 70);
+        gradebook.setGradingScheme(GradingScheme.parse("homework=30 exams=70"));
+        assertEquals(0.3 * 90 + 0.7 * 70, gradebook.averageFor("Olga").get(), 1e-9);
+        assertEquals("C", gradebook.letterGradeFor("Olga").get());
+    }
+
+    @Test
+    public void testGradingSchemeDropsLowestAndUsesCustomCutoffs() {
+        gradebook.addStudent("Pat");
+        gradebook.addGrade("Pat", "quiz", 39);
+        gradebook.addGrade("Pat", "quiz", 90);
+        gradebook.addGrade("Pat", "quiz", 96);
+        gradebook.setGradingScheme(GradingScheme.parse("quiz=1/1 A>=95 B>=85 F>=0"));
+        assertEquals(93.0, gradebook.averageFor("Pat").get());
+        assertEquals("B", gradebook.letterGradeFor("Pat").get());
+
+        gradebook.setGradingScheme(GradingScheme.standard());
+        assertEquals(75.0, gradebook.averageFor("Pat").get());
+        assertEquals("C", gradebook.letterGradeFor("Pat").get());
+    }
+
+    @Test
+    public void testGradingSchemeIgnoresEmptyCategories() {
+        gradebook.addStudent("Quinn");
+        gradebook.setGradingScheme(GradingScheme.parse("homework=30 exams=70"));
+        assertTrue(gradebook.averageFor("Quinn").isEmpty());
+        gradebook.addGrade("Quinn", "exams", 88);
+        assertEquals(88.0, gradebook.averageFor("Quinn").get());
+        gradebook.undo();
+        assertTrue(gradebook.averageFor("Quinn").isEmpty());
+    }
+
+    @Test
+    public void testGradingSchemeParseRejectsInvalidEntries() {
+        assertThrows(IllegalArgumentException.class, () -> GradingScheme.parse("homework"));
+        assertThrows(IllegalArgumentException.class, () -> GradingScheme.parse("homework=abc"));
+        assertThrows(IllegalArgumentException.class, () -> GradingScheme.parse("homework=0"));
+        assertEquals("hw=30/1 exams=70 A>=90 B>=80 C>=70 D>=60 F>=0",
+                GradingScheme.parse("hw=30/1 exams=70").toString());
+    }
+
+    @Test
+    public void testAddGradeWithTooManyCategoriesKeepsTheCliRunning() {
+        var commands = new StringBuilder("ADD_STUDENT Ann\n");
+        for (int i = 0; i < 130; i++) {
+            commands.append("ADD_GRADE Ann 90 cat").append(i).append('\n');
+        }
+        var output = runCli(new Main(), commands.append("EXIT\n").toString());
+        assertTrue(output.contains("Too many grade categories"));
+        assertTrue(output.contains("Goodbye!"));
+    }
+
+    @Test
+    public void testAdjustedAverageDropsLowestAndHighest() {
+        assertTrue(gradebook.adjustedAverageFor("Rita", 1, 0).isEmpty());
+        gradebook.addStudent("Rita");
+        gradebook.addGrade("Rita", 50);
+        gradebook.addGrade("Rita", 80);
+        gradebook.addGrade("Rita", 90);
+        gradebook.addGrade("Rita", 100);
+        assertEquals(90.0, gradebook.adjustedAverageFor("Rita", 1, 0).get());
+        assertEquals(85.0, gradebook.adjustedAverageFor("Rita", 1, 1).get());
+        assertEquals(65.0, gradebook.adjustedAverageFor("Rita", 0, 2).get());
+        assertTrue(gradebook.adjustedAverageFor("Rita", 2, 2).isEmpty());
+
+        gradebook.undo();
+        assertEquals(85.0, gradebook.adjustedAverageFor("Rita", 1, 0).get());
+        gradebook.removeLastGrade("Rita");
+        assertEquals(80.0, gradebook.adjustedAverageFor("Rita", 1, 0).get());
+    }
+
+    @Test
+    public void testGradingSchemeDropsHighest() {
+        gradebook.addStudent("Sam");
+        gradebook.addGrade("Sam", "quiz", 60);
+        gradebook.addGrade("Sam", "quiz", 70);
+        gradebook.addGrade("Sam", "quiz", 100);
+        gradebook.setGradingScheme(GradingScheme.parse("quiz=1/0/1"));
+        assertEquals(65.0, gradebook.averageFor("Sam").get());
+        assertEquals("quiz=1/0/1 A>=90 B>=80 C>=70 D>=60 F>=0", gradebook.gradingScheme().toString());
+    }
+
+    @Test
+    public void testOffHeapStorageMatchesHeapStorage() {
+        var offHeap = new Gradebook(GradeStorage.OFF_HEAP);
+        for (var book : new Gradebook[] {gradebook, offHeap}) {
+            book.addStudent("Tess");
+            book.addStudent("Uma");
+            for (int i = 0; i <= 100; i++) {
+                book.addGrade("Tess", i);
+                book.addGrade("Uma", "exams", 100 - i / 2);
+            }
+            book.removeLastGrade("Tess");
+            book.removeStudent("Uma");
+            book.undo();
+        }
+        assertEquals(GradeStorage.OFF_HEAP, offHeap.storage());
+        assertEquals(gradebook.findStudentGrades("Tess"), offHeap.findStudentGrades("Tess"));
+        assertEquals(gradebook.findStudentGrades("Uma"), offHeap.findStudentGrades("Uma"));
+        assertEquals(49.5, offHeap.averageFor("Tess").get());
+        assertEquals(gradebook.adjustedAverageFor("Uma", 3, 2), offHeap.adjustedAverageFor("Uma", 3, 2));
+        assertEquals(gradebook.classAverage(), offHeap.classAverage());
+    }
+
+    @Test
+    public void testGradeStorageFromOption() {
+        assertEquals(GradeStorage.HEAP, GradeStorage.fromOption("heap"));
+        assertEquals(GradeStorage.OFF_HEAP, GradeStorage.fromOption("OFF-HEAP"));
+        assertThrows(IllegalArgumentException.class, () -> GradeStorage.fromOption("disk"));
+    }
+
+    @Test
+    public void testImportGradesFromCsv() throws Exception {
+        gradebook.addStudent("Vera");
+        var csv = "student,grade,category\nVera,90\n\"Smith, Will\",80,homework\r\n\"Smith, Will\",70,homework\nXena\n";
+        var imported = gradebook.importGrades(Channels.newChannel(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))), ',');
+        assertEquals(3, imported);
+        assertEquals(90, gradebook.findStudentGrades("Vera").get().get(0));
+        assertEquals(75.0, gradebook.averageFor("Smith, Will").get());
+        assertTrue(gradebook.findStudentGrades("Xena").get().isEmpty());
+
+        assertTrue(gradebook.undo());
+        assertTrue(gradebook.findStudentGrades("Vera").get().isEmpty());
+        assertTrue(gradebook.findStudentGrades("Smith, Will").isEmpty());
+        assertTrue(gradebook.findStudentGrades("Xena").isEmpty());
+    }
+
+    @Test
+    public void testImportRejectsMalformedRowsWithoutChangingState() {
+        var tsv = "Wade\t95\nWade\t101\n";
+        var error = assertThrows(IllegalArgumentException.class, () -> gradebook.importGrades(Channels.newChannel(
+                new ByteArrayInputStream(tsv.getBytes(StandardCharsets.UTF_8))), '\t'));
+        assertTrue(error.getMessage().startsWith("Line 2"));
+        assertTrue(gradebook.findStudentGrades("Wade").isEmpty());
+        assertFalse(gradebook.undo());
+    }
+
+    @Test
+    public void testExportThenImportRoundTrips() throws Exception {
+        gradebook.addStudent("Yuri");
+        gradebook.addStudent("Zoe \"Z\"");
+        gradebook.addGrade("Yuri", 100);
+        gradebook.addGrade("Yuri", "exams", 7);
+        var out = new ByteArrayOutputStream();
+        assertEquals(3, gradebook.exportGrades(Channels.newChannel(out), ','));
+
+        var copy = new Gradebook(GradeStorage.OFF_HEAP);
+        copy.importGrades(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())), ',');
+        copy.setGradingScheme(GradingScheme.parse("exams=1"));
+        assertEquals(gradebook.findStudentGrades("Yuri"), copy.findStudentGrades("Yuri"));
+        assertTrue(copy.findStudentGrades("Zoe \"Z\"").get().isEmpty());
+        assertEquals(7.0, copy.averageFor("Yuri").get());
+    }
+
+    @Test
+    public void testBinaryProtocolDispatchesToGradebook() throws Exception {
+        var requests = ByteBuffer.allocate(256);
+        BinaryProtocol.encodeName(requests, BinaryProtocol.ADD_STUDENT, "Abe");
+        BinaryProtocol.encodeAddGrade(requests, 0, 80);
+        BinaryProtocol.encodeAddGrade(requests, 0, 100);
+        BinaryProtocol.encodeAddGrade(requests, 7, 100);
+        BinaryProtocol.encodeStudent(requests, BinaryProtocol.REPORT, 0);
+        BinaryProtocol.encodeSimple(requests, BinaryProtocol.UNDO);
+        BinaryProtocol.encodeSimple(requests, BinaryProtocol.CLASS_REPORT);
+        requests.flip();
+        var out = new ByteArrayOutputStream();
+        new BinaryProtocol(gradebook).serve(Channels.newChannel(
+                new ByteArrayInputStream(requests.array(), 0, requests.limit())), Channels.newChannel(out));
+
+        var responses = ByteBuffer.wrap(out.toByteArray());
+        BinaryProtocol.readVarint(responses);
+        assertEquals(BinaryProtocol.OK, responses.get());
+        assertEquals(0, BinaryProtocol.readVarint(responses));
+        BinaryProtocol.readVarint(responses);
+        assertEquals(BinaryProtocol.OK, responses.get());
+        BinaryProtocol.readVarint(responses);
+        assertEquals(BinaryProtocol.OK, responses.get());
+        BinaryProtocol.readVarint(responses);
+        assertEquals(BinaryProtocol.UNKNOWN_STUDENT, responses.get());
+        BinaryProtocol.readVarint(responses);
+        assertEquals(BinaryProtocol.OK, responses.get());
+        assertEquals(90.0, responses.getDouble());
+        assertEquals(1, BinaryProtocol.readVarint(responses));
+        assertEquals('A', responses.get());
+        BinaryProtocol.readVarint(responses);
+        assertEquals(BinaryProtocol.OK, responses.get());
+        BinaryProtocol.readVarint(responses);
+        assertEquals(BinaryProtocol.OK, responses.get());
+        assertEquals(80.0, responses.getDouble());
+        assertFalse(responses.hasRemaining());
+        assertTrue(gradebook.recentLog(10).stream().noneMatch(line -> line.contains("letter grade")));
+    }
+
+    @Test
+    public void testCurveAppliesLazilyAndUndoes() {
+        gradebook.addStudent("Bea");
+        gradebook.addStudent("Cal");
+        gradebook.addGrade("Bea", 70);
+        gradebook.addGrade("Cal", 50);
+        gradebook.curve(1.0, 5.0);
+        gradebook.curve(2.0, 0.0);
+        assertEquals(100.0, gradebook.averageFor("Bea").get());
+        assertEquals(100.0, gradebook.averageFor("Cal").get());
+        gradebook.addGrade("Cal", 0);
+        assertEquals(60.0, gradebook.averageFor("Cal").get());
+        assertEquals("D", gradebook.letterGradeFor("Cal").get());
+
+        assertTrue(gradebook.undo());
+        assertTrue(gradebook.undo());
+        assertEquals(55.0, gradebook.averageFor("Cal").get());
+        assertEquals(65.0, gradebook.classAverage().get());
+        assertTrue(gradebook.undo());
+        assertEquals(50.0, gradebook.averageFor("Cal").get());
+    }
+
+    @Test
+    public void testCurveToTopAndReset() {
+        assertFalse(gradebook.curveToTop(100));
+        gradebook.addStudent("Dee");
+        gradebook.addStudent("Eli");
+        gradebook.addGrade("Dee", 80);
+        gradebook.addGrade("Eli", 40);
+        assertTrue(gradebook.curveToTop(100));
+        assertEquals(100.0, gradebook.averageFor("Dee").get(), 1e-9);
+        assertEquals(50.0, gradebook.averageFor("Eli").get(), 1e-9);
+        gradebook.resetCurve();
+        assertEquals(40.0, gradebook.averageFor("Eli").get());
+        assertTrue(gradebook.undo());
+        assertEquals(50.0, gradebook.averageFor("Eli").get(), 1e-9);
+        assertThrows(IllegalArgumentException.class, () -> gradebook.curve(0.0, 1.0));
+    }
+
+    @Test
+    public void testClassAndStudentDistribution() {
+        assertTrue(gradebook.classDistribution().isEmpty());
+        gradebook.addStudent("Fay");
+        gradebook.addStudent("Gus");
+        gradebook.addStudent("Hal");
+        for (int grade : new int[] {100, 90, 80, 0}) {
+            gradebook.addGrade("Fay", grade);
+        }
+        gradebook.addGrade("Gus", 70);
+        gradebook.addGrade("Gus", 50);
+
+        var dist = gradebook.classDistribution().get();
+        assertEquals(6, dist.count());
+        assertEquals(65.0, dist.mean(), 1e-9);
+        assertEquals((35.0 * 35 + 25 * 25 + 15 * 15 + 65 * 65 + 5 * 5 + 15 * 15) / 6, dist.variance(), 1e-9);
+        assertEquals(0, dist.min());
+        assertEquals(100, dist.max());
+
+        var fay = gradebook.distributionFor("Fay").get();
+        assertEquals(4, fay.count());
+        assertEquals(67.5, fay.mean(), 1e-9);
+        assertTrue(gradebook.distributionFor("Hal").isEmpty());
+
+        var letters = gradebook.letterDistribution();
+        assertEquals(java.util.List.of("A", "B", "C", "D", "F"), new ArrayList<>(letters.keySet()));
+        assertEquals(2, letters.get("D"));
+        assertEquals(0, letters.get("F"));
+    }
+
+    @Test
+    public void testIdleStudentsArePackedAndUnpackedOnChange() {
+        gradebook.addStudent("Ian");
+        gradebook.addStudent("Jo");
+        for (int i = 0; i < 40; i++) {
+            gradebook.addGrade("Ian", i * 2);
+            gradebook.addGrade("Jo", i % 2 == 0 ? "exams" : "homework", 100 - i);
+        }
+        var before = new ArrayList<>(gradebook.findStudentGrades("Jo").get());
+        assertEquals(2, gradebook.compactIdleStudents(Duration.ZERO));
+        assertEquals(0, gradebook.compactIdleStudents(Duration.ZERO));
+
+        var report = gradebook.coldStorageReport();
+        assertEquals(2, report.packedStudents());
+        assertTrue(report.savedBytes() > 0);
+        assertEquals(before, gradebook.findStudentGrades("Jo").get());
+        assertEquals(39.0, gradebook.averageFor("Ian").get());
+        assertEquals(59.75, gradebook.classAverage().get());
+        gradebook.setGradingScheme(GradingScheme.parse("exams=1/1"));
+        assertEquals(82.0, gradebook.averageFor("Jo").get());
+
+        assertTrue(gradebook.addGrade("Jo", "exams", 0));
+        assertEquals(1, gradebook.coldStorageReport().packedStudents());
+        assertTrue(gradebook.undo());
+        assertEquals(82.0, gradebook.averageFor("Jo").get());
+        assertEquals(40, gradebook.findStudentGrades("Jo").get().size());
+    }
+
+    @Test
+    public void testOffHeapStorageIsReusedAfterStudentsAreGone() {
+        var offHeap = new Gradebook(GradeStorage.OFF_HEAP);
+        offHeap.setMemoryBudget(64 << 10);
+        long reserved = 0;
+        for (int cycle = 0; cycle < 6000; cycle++) {
+            if (cycle == 1000) {
+                reserved = offHeap.memoryReport().offHeapBytes();
+            }
+            var name = "Student" + cycle;
+            offHeap.addStudent(name);
+            for (int i = 0; i < 20; i++) {
+                offHeap.addGrade(name, i % 2 == 0 ? "default" : "exams", 60 + i);
+            }
+            offHeap.removeStudent(name);
+            offHeap.addStudent("Empty");
+            offHeap.removeStudent("Empty");
+            var transaction = offHeap.begin();
+            transaction.addStudent("Pending");
+            transaction.addGrade("Pending", 90);
+            assertTrue(transaction.commit());
+            assertTrue(offHeap.undo());
+        }
+        assertTrue(reserved > 0);
+        assertEquals(reserved, offHeap.memoryReport().offHeapBytes());
+        assertTrue(offHeap.memoryReport().droppedUndoEntries() > 0);
+    }
+
+    @Test
+    public void testPackedStudentsAnswerWithoutRebuildingHistograms() {
+        var scheme = GradingScheme.parse("exams=2 homework=1");
+        var unpacked = new Gradebook();
+        for (var book : List.of(gradebook, unpacked)) {
+            for (int s = 0; s < 50; s++) {
+                book.addStudent("s" + s);
+                for (int i = 0; i < 12; i++) {
+                    book.addGrade("s" + s, i % 3 == 0 ? "exams" : "homework", (s * 7 + i * 13) % 101);
+                }
+            }
+            book.setGradingScheme(scheme);
+        }
+        assertEquals(50, gradebook.compactIdleStudents(Duration.ZERO));
+        assertEquals(unpacked.classDistribution(), gradebook.classDistribution());
+        assertEquals(unpacked.distributionFor("s3"), gradebook.distributionFor("s3"));
+        assertEquals(unpacked.letterDistribution(), gradebook.letterDistribution());
+        assertEquals(unpacked.averageFor("s9"), gradebook.averageFor("s9"));
+
+        var threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        var summary = new StudentSummary();
+        for (int i = 0; i < 20_000; i++) {
+            gradebook.summarize("s" + (i % 10), summary);
+        }
+        var names = new String[10];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "s" + i;
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 10_000; i++) {
+            gradebook.summarize(names[i % 10], summary);
+        }
+        assertTrue(threads.getCurrentThreadAllocatedBytes() - before < 100_000);
+        assertEquals(50, gradebook.coldStorageReport().packedStudents());
+    }
+
+    @Test
+    public void testBadColdAfterOptionIsReported() throws Exception {
+        for (var option : List.of("--cold-after=abc", "--cold-after=-1")) {
+            assertEquals("Unknown option: " + option + " (expected a non-negative number of seconds)",
+                    runMain(option).strip());
+        }
+    }
+
+    @Test
+    public void testSketchesTrackChangesAndMergeAcrossCourses() {
+        var other = new Gradebook();
+        for (int i = 0; i < 2000; i++) {
+            gradebook.addStudent("s" + i);
+            gradebook.addGrade("s" + i, i % 100 + 1);
+            other.addStudent("s" + (i + 1000));
+            other.addGrade("s" + (i + 1000), 100);
+        }
+        assertEquals(50, gradebook.sketch().gradeQuantile(0.5));
+        gradebook.addGrade("s7", 9);
+        assertEquals(2001, gradebook.sketch().gradeCount());
+        assertEquals(8.0, gradebook.sketch().averageQuantile(150 / 2000.0));
+        assertEquals(8.5, gradebook.sketch().averageQuantile(160 / 2000.0));
+        gradebook.undo();
+        gradebook.removeStudent("s0");
+        gradebook.removeLastGrade("s1");
+        assertEquals(1998, gradebook.sketch().gradeCount());
+        assertEquals(1998, gradebook.sketch().gradedStudentCount());
+        assertEquals(1, gradebook.sketch().gradeQuantile(0));
+        assertEquals(100.0, gradebook.sketch().averageQuantile(1));
+
+        var department = gradebook.sketch();
+        department.merge(other.sketch());
+        assertEquals(3998, department.gradeCount());
+        assertEquals(100, department.gradeQuantile(0.75));
+        assertEquals(3000, department.distinctStudents(), 3000 * 0.05);
+        assertEquals(-1, new GradeSketch().gradeQuantile(0.5));
+        assertTrue(Double.isNaN(new GradeSketch().averageQuantile(0.5)));
+    }
+
+    @Test
+    public void testTransactionAppliesAndUndoesAsOneUnit() {
+        gradebook.addStudent("Ann");
+        gradebook.addGrade("Ann", 70);
+        var tx = gradebook.begin();
+        assertTrue(tx.addStudent("Ben"));
+        assertTrue(tx.addGrade("Ben", 90));
+        assertTrue(tx.addGrade("Ann", 80));
+        assertTrue(tx.removeStudent("Ann"));
+        assertTrue(tx.addStudent("Ann"));
+        assertFalse(tx.addGrade("Cal", 50));
+        assertEquals(70.0, gradebook.averageFor("Ann").get());
+        assertTrue(gradebook.findStudentGrades("Ben").isEmpty());
+
+        assertTrue(tx.commit());
+        assertEquals(List.of(90), gradebook.findStudentGrades("Ben").get());
+        assertEquals(List.of(), gradebook.findStudentGrades("Ann").get());
+        assertThrows(IllegalStateException.class, tx::commit);
+
+        assertTrue(gradebook.undo());
+        assertTrue(gradebook.findStudentGrades("Ben").isEmpty());
+        assertEquals(List.of(70), gradebook.findStudentGrades("Ann").get());
+        assertEquals(1, gradebook.sketch().gradeCount());
+    }
+
+    @Test
+    public void testTransactionRollbackAndConflicts() {
+        gradebook.addStudent("Ann");
+        gradebook.addStudent("Ben");
+        var rolledBack = gradebook.begin();
+        rolledBack.addGrade("Ann", 60);
+        rolledBack.rollback();
+        assertEquals(List.of(), gradebook.findStudentGrades("Ann").get());
+
+        var first = gradebook.begin();
+        var second = gradebook.begin();
+        var third = gradebook.begin();
+        first.addGrade("Ann", 90);
+        second.addGrade("Ann", 50);
+        third.addGrade("Ben", 80);
+        assertTrue(first.commit());
+        assertFalse(second.commit());
+        assertTrue(third.commit());
+        assertEquals(List.of(90), gradebook.findStudentGrades("Ann").get());
+        assertEquals(List.of(80), gradebook.findStudentGrades("Ben").get());
+
+        var stale = gradebook.begin();
+        stale.addStudent("Cal");
+        gradebook.addStudent("Cal");
+        assertFalse(stale.commit());
+        assertThrows(IllegalArgumentException.class, () -> gradebook.begin().addGrade("Ann", 101));
+    }
+
+    @Test
+    public void testSummaryIsFilledFromOneLookupAndReused() {
+        var summary = new StudentSummary();
+        assertFalse(gradebook.summarize("Dee", summary));
+        assertTrue(gradebook.averageAsDouble("Dee").isEmpty());
+        assertTrue(gradebook.classAverageAsDouble().isEmpty());
+
+        gradebook.addStudent("Dee");
+        assertTrue(gradebook.summarize("Dee", summary));
+        assertEquals(0, summary.gradeCount());
+        assertFalse(summary.hasAverage());
+        assertNull(summary.letterGrade());
+
+        for (int i = 0; i < 40; i++) {
+            gradebook.addGrade("Dee", 80 + i % 10);
+        }
+        gradebook.addStudent("Eli");
+        gradebook.addGrade("Eli", 59);
+        assertTrue(gradebook.summarize("Dee", summary));
+        assertEquals(40, summary.gradeCount());
+        assertEquals(89, summary.grade(39));
+        assertEquals(84.5, summary.average());
+        assertEquals("B", summary.letterGrade());
+        assertEquals(84.5, gradebook.averageAsDouble("Dee").getAsDouble());
+
+        assertTrue(gradebook.summarize("Eli", summary));
+        assertEquals("Eli", summary.name());
+        assertEquals(1, summary.gradeCount());
+        assertEquals("F", summary.letterGrade());
+        assertThrows(IndexOutOfBoundsException.class, () -> summary.grade(1));
+        assertEquals(gradebook.classAverage().get(), gradebook.classAverageAsDouble().getAsDouble());
+    }
+
+    @Test
+    public void testReportAllStreamsEveryStudentInOrder() throws Exception {
+        gradebook.addStudent("Zoë");
+        gradebook.addGrade("Zoë", 95);
+        gradebook.addGrade("Zoë", 100);
+        gradebook.addStudent("Adam");
+        gradebook.addGrade("Adam", 71);
+        gradebook.addGrade("Adam", 70);
+        gradebook.addGrade("Adam", 70);
+        gradebook.addStudent("Bea");
+        gradebook.addStudent("Cy");
+        gradebook.addGrade("Cy", 71);
+        gradebook.addGrade("Cy", 70);
+        gradebook.addGrade("Cy", 70);
+
+        var bytes = new ByteArrayOutputStream();
+        assertEquals(4, gradebook.reportAll(Channels.newChannel(bytes), ReportOrder.NAME));
+        assertEquals("Adam [71, 70, 70] 70.33 C\nBea [] N/A N/A\nCy [71, 70, 70] 70.33 C\nZoë [95, 100] 97.50 A\n",
+                bytes.toString(StandardCharsets.UTF_8));
+
+        bytes.reset();
+        gradebook.reportAll(Channels.newChannel(bytes), ReportOrder.AVERAGE);
+        assertEquals(List.of("Zoë", "Adam", "Cy", "Bea"),
+                bytes.toString(StandardCharsets.UTF_8).lines().map(line -> line.split(" ")[0]).toList());
+
+        for (int i = 0; i < 5000; i++) {
+            gradebook.addStudent("student" + i);
+            gradebook.addGrade("student" + i, i % 101);
+        }
+        bytes.reset();
+        assertEquals(5004, gradebook.reportAll(Channels.newChannel(bytes), ReportOrder.UNSORTED));
+        var lines = bytes.toString(StandardCharsets.UTF_8).lines().toList();
+        assertEquals(5004, lines.size());
+        assertTrue(lines.contains("student4242 [0] 0.00 F"));
+    }
+
+    @Test
+    public void testTransactionPastTheCategoryLimitAppliesNothing() {
+        gradebook.addStudent("Ann");
+        gradebook.addGrade("Ann", 90);
+        var transaction = gradebook.begin();
+        transaction.addStudent("Ben");
+        transaction.addGrade("Ann", 80);
+        for (int i = 0; i < 130; i++) {
+            transaction.addGrade("Ann", "cat" + i, 70);
+        }
+        assertThrows(IllegalArgumentException.class, transaction::commit);
+        assertEquals(List.of(90), gradebook.findStudentGrades("Ann").get());
+        assertTrue(gradebook.findStudentGrades("Ben").isEmpty());
+        assertTrue(gradebook.undo());
+        assertEquals(List.of(), gradebook.findStudentGrades("Ann").get());
+
+        var commands = new StringBuilder("ADD_STUDENT Cy\nBEGIN\n");
+        for (int i = 0; i < 130; i++) {
+            commands.append("ADD_GRADE Cy 90 other").append(i).append('\n');
+        }
+        var output = runCli(new Main(), commands.append("COMMIT\nREPORT Cy\nEXIT\n").toString());
+        assertTrue(output.contains("Nothing was applied: Too many grade categories"));
+        assertTrue(output.contains("Grades: []"));
+    }
+
+    @Test
+    public void testRecordedTraceReplaysIntoTheSameState(@TempDir Path dir) throws Exception {
+        var file = Files.createTempFile("gradebook", ".trace");
+        var commands = "ADD_STUDENT Ann\nADD_GRADE Ann 90\nBEGIN\nADD_GRADE Ann 70 exams\nADD_STUDENT Ben\nCOMMIT\n"
+                + "REPORT Ann\nBOGUS\nEXPORT " + dir.resolve("export.csv") + "\nADD_GRADE Ann 1x\nEXIT\n";
+        var stdin = System.in;
+        var stdout = System.out;
+        try {
+            System.setIn(new ByteArrayInputStream(commands.getBytes(StandardCharsets.UTF_8)));
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            var app = new Main();
+            app.recordTrace(file);
+            app.run();
+        } finally {
+            System.setIn(stdin);
+            System.setOut(stdout);
+        }
+
+        var replayed = new Gradebook();
+        var report = TraceReplay.replay(file, replayed, TraceReplay.MAX_SPEED);
+        assertEquals(8, report.operations());
+        assertEquals(1, report.skipped());
+        assertEquals(List.of(90, 70), replayed.findStudentGrades("Ann").get());
+        assertTrue(replayed.findStudentGrades("Ben").isPresent());
+        assertTrue(report.p50Nanos() <= report.p99Nanos() && report.p99Nanos() <= report.maxNanos());
+        Files.delete(file);
+    }
+
+    @Test
+    public void testSyntheticTraceFollowsMixAndPopularity() throws Exception {
+        var file = Files.createTempFile("synthetic", ".trace");
+        var spec = new SyntheticTrace(100, 20_000, 0.25, 1.2, 1_000_000, 42);
+        assertEquals(20_100, spec.writeTo(file));
+
+        var first = new Gradebook();
+        var report = TraceReplay.replay(file, first, 50.0);
+        assertEquals(20_100, report.operations());
+        assertTrue(report.elapsedNanos() < 20_000_000_000L);
+        var second = new Gradebook();
+        TraceReplay.replay(file, second, TraceReplay.MAX_SPEED);
+        assertEquals(first.findStudentGrades("student7").get(), second.findStudentGrades("student7").get());
+
+        int grades = 0;
+        for (int i = 0; i < 100; i++) {
+            grades += first.findStudentGrades("student" + i).get().size();
+        }
+        assertEquals(15_000, grades, 300);
+        assertTrue(first.findStudentGrades("student0").get().size() > 10 * first.findStudentGrades("student50").get().size());
+        assertThrows(IllegalArgumentException.class, () -> new SyntheticTrace(10, 10, 1.5, 1, 1, 1));
+        Files.delete(file);
+    }
+
+    @Test
+    public void testTraceIsFinishedWhenInputEndsWithoutExit(@TempDir Path dir) throws Exception {
+        var file = dir.resolve("eof.trace");
+        var app = new Main();
+        app.recordTrace(file);
+        assertThrows(java.util.NoSuchElementException.class, () -> runCli(app, "ADD_STUDENT Ann\nADD_GRADE Ann 90\n"));
+
+        var replayed = new Gradebook();
+        assertEquals(2, TraceReplay.replay(file, replayed, TraceReplay.MAX_SPEED).operations());
+        assertEquals(List.of(90), replayed.findStudentGrades("Ann").get());
+    }
+
+    @Test
+    public void testAuditLogKeepsEveryEntryAcrossRotatedFiles() throws Exception {
+        var directory = Files.createTempDirectory("audit");
+        var audit = AuditLog.open(directory, 4096, Duration.ofMillis(5), true);
+        gradebook.setAuditLog(audit);
+        gradebook.addStudent("Ann");
+        gradebook.addGrade("Ann", 90);
+        gradebook.undo();
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            int id = t;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 500; i++) {
+                    audit.append("thread " + id + " entry " + i);
+                }
+            }));
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+        audit.close();
+        assertThrows(IllegalStateException.class, () -> audit.append("late"));
+
+        var again = AuditLog.open(directory, 4096, Duration.ofMillis(5), false);
+        again.append("second run");
+        again.close();
+
+        var lines = new ArrayList<String>();
+        try (var files = Files.list(directory)) {
+            for (var file : files.sorted().toList()) {
+                var in = Files.newInputStream(file);
+                var text = file.toString().endsWith(".gz") ? new GZIPInputStream(in) : in;
+                try (text) {
+                    new String(text.readAllBytes(), StandardCharsets.UTF_8).lines().forEach(lines::add);
+                }
+            }
+        }
+        assertEquals(2005, lines.size());
+        assertTrue(lines.get(0).endsWith("\tAdded student Ann"));
+        assertTrue(lines.get(3).endsWith("\tUndo"));
+        assertTrue(lines.getLast().endsWith("\tsecond run"));
+        for (int t = 0; t < 4; t++) {
+            int id = t;
+            assertEquals(500, lines.stream().filter(line -> line.contains("thread " + id + " ")).count());
+        }
+        try (var files = Files.list(directory)) {
+            assertTrue(files.count() > 2);
+        }
+    }
+
+    @Test
+    public void testAuditLogFailsLoudlyAndKeepsEntriesAppendedDuringClose(@TempDir Path dir) throws Exception {
+        var gone = dir.resolve("gone");
+        var failing = AuditLog.open(gone, 4096, Duration.ofMillis(1), false);
+        Files.delete(gone);
+        failing.append("never written");
+        var deadline = System.nanoTime() + 5_000_000_000L;
+        var stopped = false;
+        while (!stopped && System.nanoTime() < deadline) {
+            try {
+                failing.append("retry");
+                Thread.sleep(1);
+            } catch (IllegalStateException e) {
+                stopped = true;
+            }
+        }
+        assertTrue(stopped);
+        assertThrows(java.io.IOException.class, failing::close);
+
+        var directory = dir.resolve("racing");
+        var audit = AuditLog.open(directory, 1 << 20, Duration.ofMillis(1), false);
+        var accepted = new java.util.concurrent.atomic.AtomicInteger();
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    while (true) {
+                        audit.append("entry");
+                        accepted.incrementAndGet();
+                    }
+                } catch (IllegalStateException e) {
+                    // closed
+                }
+            }));
+        }
+        Thread.sleep(20);
+        audit.close();
+        for (var thread : threads) {
+            thread.join();
+        }
+        long written = 0;
+        try (var files = Files.list(directory)) {
+            for (var file : files.toList()) {
+                written += Files.readAllLines(file).size();
+            }
+        }
+        assertEquals(accepted.get(), written);
+    }
+
+    @Test
+    public void testFollowersReplicateLeaderChangesAndSnapshots() throws Exception {
+        gradebook.addStudent("Ann");
+        gradebook.addGrade("Ann", "exams", 80);
+        try (var leader = ReplicationLeader.start(gradebook, 0);
+             var first = ReplicationFollower.connect(leader.port(), Duration.ofSeconds(5))) {
+            assertTrue(first.awaitSequence(leader.sequence(), Duration.ofSeconds(5)));
+            assertEquals(Optional.of(List.of(80)), first.read(replica -> replica.findStudentGrades("Ann").get()));
+
+            gradebook.setGradingScheme(GradingScheme.parse("exams=1"));
+            gradebook.addGrade("Ann", "homework", 10);
+            gradebook.addStudent("Ben");
+            gradebook.addGrade("Ben", "exams", 95);
+            gradebook.curve(1.0, 2.0);
+            gradebook.setTrendWindow(3);
+            gradebook.removeStudent("Ben");
+            gradebook.undo();
+            var tx = gradebook.begin();
+            tx.addGrade("Ann", "exams", 90);
+            tx.addStudent("Cal");
+            assertTrue(tx.commit());
+            gradebook.undo();
+            for (int i = 0; i < 2000; i++) {
+                gradebook.addGrade("Ben", "exams", i % 101);
+            }
+
+            try (var second = ReplicationFollower.connect(leader.port(), Duration.ofSeconds(5))) {
+                long sequence = leader.sequence();
+                assertTrue(first.awaitSequence(sequence, Duration.ofSeconds(5)));
+                assertTrue(second.awaitSequence(sequence, Duration.ofSeconds(5)));
+                for (var follower : List.of(first, second)) {
+                    assertEquals(gradebook.findStudentGrades("Ann"), follower.read(g -> g.findStudentGrades("Ann")).get());
+                    assertEquals(gradebook.findStudentGrades("Ben"), follower.read(g -> g.findStudentGrades("Ben")).get());
+                    assertTrue(follower.read(g -> g.findStudentGrades("Cal").isEmpty()).get());
+                    assertEquals(gradebook.averageFor("Ann"), follower.read(g -> g.averageFor("Ann")).get());
+                    assertEquals(gradebook.classAverage(), follower.read(Gradebook::classAverage).get());
+                    assertEquals(gradebook.recentLog(3), follower.read(g -> g.recentLog(3)).get());
+                    assertEquals(gradebook.trendFor("Ben"), follower.read(g -> g.trendFor("Ben")).get());
+                }
+                assertEquals(2, leader.followerCount());
+            }
+            leader.close();
+            gradebook.addStudent("Dee");
+            Thread.sleep(100);
+            assertFalse(first.isFresh());
+            assertTrue(first.read(g -> g.findStudentGrades("Dee")).isEmpty());
+        }
+    }
+
+    @Test
+    public void testFollowersNeverShowHalfACommittedTransaction() throws Exception {
+        try (var leader = ReplicationLeader.start(gradebook, 0);
+             var follower = ReplicationFollower.connect(leader.port(), Duration.ofSeconds(5))) {
+            assertTrue(follower.awaitSequence(leader.sequence(), Duration.ofSeconds(5)));
+            var done = new AtomicBoolean();
+            var torn = new AtomicInteger();
+            var reader = Thread.ofPlatform().start(() -> {
+                while (!done.get()) {
+                    follower.read(replica -> {
+                        for (int t = 0; t < 500; t++) {
+                            var grades = replica.findStudentGrades("T" + t);
+                            if (grades.isPresent() && grades.get().size() != 5) {
+                                torn.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    });
+                }
+            });
+            for (int t = 0; t < 500; t++) {
+                var tx = gradebook.begin();
+                tx.addStudent("T" + t);
+                for (int g = 0; g < 5; g++) {
+                    tx.addGrade("T" + t, 60 + g);
+                }
+                assertTrue(tx.commit());
+            }
+            assertTrue(follower.awaitSequence(leader.sequence(), Duration.ofSeconds(5)));
+            done.set(true);
+            reader.join();
+            assertEquals(0, torn.get());
+            assertEquals(gradebook.classAverage(), follower.read(Gradebook::classAverage).get());
+        }
+    }
+
+    @Test
+    public void testBadReplicationOptionsAreReported() throws Exception {
+        for (var option : List.of("--replicate=x", "--replicate=-1", "--replicate=65536", "--follow=0",
+                "--follow=4294967297", "--max-staleness=-1", "--max-staleness=soon")) {
+            assertTrue(runMain(option).startsWith("Unknown option: " + option + " (expected "), option);
+        }
+        assertTrue(runMain("--replicate=0", "--follow=7000").startsWith("Unknown option: --replicate"));
+        assertTrue(runMain("--follow=7000", "--protocol=binary").startsWith("Unknown option: --protocol=binary"));
+    }
+
+    @Test
+    public void testPartitionedGradebookMatchesSingleGradebook() {
+        var nodes = new ArrayList<GradebookNode>();
+        for (int i = 0; i < 4; i++) {
+            nodes.add(GradebookNode.local("node-" + i));
+        }
+        try (var partitioned = new PartitionedGradebook(nodes)) {
+            partitioned.setGradingScheme(GradingScheme.parse("exams=1"));
+            gradebook.setGradingScheme(GradingScheme.parse("exams=1"));
+            for (int s = 0; s < 400; s++) {
+                String name = "Student" + s;
+                assertTrue(partitioned.addStudent(name));
+                gradebook.addStudent(name);
+                for (int g = 0; g < 3; g++) {
+                    int grade = (s * 37 + g * 11) % 101;
+                    assertTrue(partitioned.addGrade(name, "exams", grade));
+                    gradebook.addGrade(name, "exams", grade);
+                }
+            }
+            assertFalse(partitioned.addStudent("Student7"));
+            assertFalse(partitioned.addGrade("Nobody", 90));
+            for (var node : nodes) {
+                assertTrue(node.studentNames().size() > 50);
+            }
+
+            assertEquals(gradebook.classAverage().get(), partitioned.classAverage().getAsDouble(), 1e-9);
+            var expected = gradebook.classDistribution().get();
+            var merged = partitioned.classDistribution().get();
+            assertEquals(expected.count(), merged.count());
+            assertEquals(expected.mean(), merged.mean(), 1e-9);
+            assertEquals(expected.variance(), merged.variance(), 1e-6);
+            assertEquals(expected.min(), merged.min());
+            assertEquals(expected.max(), merged.max());
+            assertEquals(gradebook.letterDistribution(), partitioned.letterDistribution());
+
+            var summary = new StudentSummary();
+            assertTrue(partitioned.summarize("Student12", summary));
+            assertEquals(gradebook.averageAsDouble("Student12").getAsDouble(), summary.average(), 1e-9);
+
+            var added = GradebookNode.local("node-4");
+            int moved = partitioned.addNode(added);
+            assertEquals(added.studentNames().size(), moved);
+            assertTrue(moved > 40 && moved < 130, "moved " + moved);
+            assertEquals(gradebook.classAverage().get(), partitioned.classAverage().getAsDouble(), 1e-9);
+            assertTrue(partitioned.summarize("Student12", summary));
+            assertEquals(gradebook.averageAsDouble("Student12").getAsDouble(), summary.average(), 1e-9);
+
+            var removed = nodes.get(0);
+            int orphaned = removed.studentNames().size();
+            assertEquals(orphaned, partitioned.removeNode(removed));
+            assertTrue(removed.studentNames().isEmpty());
+            assertEquals(expected.count(), partitioned.classDistribution().get().count());
+            assertTrue(partitioned.removeStudent("Student12"));
+            assertFalse(partitioned.summarize("Student12", summary));
+        }
+    }
+
+    @Test
+    public void testTrendTracksLastFiveGradesThroughRemovalAndUndo() {
+        assertTrue(gradebook.trendFor("Ann").isEmpty());
+        gradebook.addStudent("Ann");
+        assertTrue(gradebook.trendFor("Ann").isEmpty());
+        gradebook.addGrade("Ann", 90);
+        assertEquals(1, gradebook.trendFor("Ann").get().count());
+        assertTrue(Double.isNaN(gradebook.trendFor("Ann").get().slope()));
+        for (int grade : new int[] {70, 95, 85, 80, 75, 70}) {
+            gradebook.addGrade("Ann", grade);
+        }
+        var trend = gradebook.trendFor("Ann").get();
+        assertEquals(5, trend.count());
+        assertEquals(81.0, trend.average(), 1e-9);
+        assertEquals(-6.0, trend.slope(), 1e-9);
+        assertTrue(trend.isDeclining());
+
+        var heap = new Gradebook();
+        var offHeap = new Gradebook(GradeStorage.OFF_HEAP);
+        var random = new Random(42);
+        var expected = new ArrayList<Integer>();
+        for (var book : List.of(heap, offHeap)) {
+            book.addStudent("Ben");
+        }
+        for (int step = 0; step < 2000; step++) {
+            int action = random.nextInt(10);
+            int grade = random.nextInt(101);
+            for (var book : List.of(heap, offHeap)) {
+                if (action < 6) {
+                    book.addGrade("Ben", grade);
+                } else if (action < 8) {
+                    book.removeLastGrade("Ben");
+                } else {
+                    book.undo();
+                }
+            }
+            if (step % 100 == 0) {
+                heap.compactIdleStudents(Duration.ZERO);
+            }
+            var grades = heap.findStudentGrades("Ben").orElse(List.of());
+            assertEquals(grades, offHeap.findStudentGrades("Ben").orElse(List.of()));
+            expected.clear();
+            expected.addAll(grades.subList(Math.max(0, grades.size() - 5), grades.size()));
+            for (var book : List.of(heap, offHeap)) {
+                var actual = book.trendFor("Ben");
+                if (expected.isEmpty()) {
+                    assertTrue(actual.isEmpty());
+                    continue;
+                }
+                double n = expected.size();
+                double meanX = (n - 1) / 2;
+                double meanY = expected.stream().mapToInt(Integer::intValue).average().getAsDouble();
+                double covariance = 0;
+                double spread = 0;
+                for (int i = 0; i < n; i++) {
+                    covariance += (i - meanX) * (expected.get(i) - meanY);
+                    spread += (i - meanX) * (i - meanX);
+                }
+                assertEquals(expected.size(), actual.get().count());
+                assertEquals(meanY, actual.get().average(), 1e-9);
+                if (n > 1) {
+                    assertEquals(covariance / spread, actual.get().slope(), 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTrendWindowLengthIsAGradebookSetting() {
+        assertEquals(5, gradebook.trendWindow());
+        gradebook.addStudent("Ann");
+        gradebook.addStudent("Ben");
+        for (int grade : new int[] {90, 70, 95, 85, 80, 75, 70}) {
+            gradebook.addGrade("Ann", grade);
+            gradebook.addGrade("Ben", grade);
+        }
+        gradebook.compactIdleStudents(Duration.ZERO);
+        gradebook.addGrade("Ann", 60);
+        var before = gradebook.memoryReport().studentBytes();
+
+        gradebook.setTrendWindow(3);
+        assertEquals(3, gradebook.trendWindow());
+        assertTrue(gradebook.memoryReport().studentBytes() < before);
+        var ann = gradebook.trendFor("Ann").get();
+        assertEquals(3, ann.count());
+        assertEquals(205.0 / 3, ann.average(), 1e-9);
+        assertEquals(-7.5, ann.slope(), 1e-9);
+        var ben = gradebook.trendFor("Ben").get();
+        assertEquals(3, ben.count());
+        assertEquals(75.0, ben.average(), 1e-9);
+        assertEquals(-5.0, ben.slope(), 1e-9);
+        gradebook.addStudent("Cal");
+        for (int grade : new int[] {90, 80, 70, 60}) {
+            gradebook.addGrade("Cal", grade);
+        }
+        assertEquals(-10.0, gradebook.trendFor("Cal").get().slope(), 1e-9);
+        gradebook.addGrade("Ben", 100);
+        assertEquals(12.5, gradebook.trendFor("Ben").get().slope(), 1e-9);
+        gradebook.undo();
+        assertEquals(-5.0, gradebook.trendFor("Ben").get().slope(), 1e-9);
+
+        gradebook.setTrendWindow(100);
+        assertEquals(8, gradebook.trendFor("Ann").get().count());
+        assertThrows(IllegalArgumentException.class, () -> gradebook.setTrendWindow(0));
+        assertThrows(IllegalArgumentException.class, () -> gradebook.setTrendWindow(1001));
+
+        var output = runCli(new Main(), "ADD_STUDENT Ann\nADD_GRADE Ann 90\nADD_GRADE Ann 80\nADD_GRADE Ann 70\n"
+                + "TREND Ann\nTREND WINDOW\nTREND WINDOW 2\nTREND Ann\nTREND WINDOW 0\nEXIT\n");
+        assertTrue(output.contains("Trend for Ann over the last 3 of 5 grades: average 80.00, slope -10.00 per grade"));
+        assertTrue(output.contains("TREND covers each student's last 5 grades"));
+        assertTrue(output.contains("TREND now covers each student's last 2 grades"));
+        assertTrue(output.contains("Trend for Ann over the last 2 of 2 grades: average 75.00"));
+        assertTrue(output.contains("Trend window must be between 1 and 1000 grades"));
+    }
+
+    @Test
+    public void testWatchesTrackMatchingStudentsAndAlertOnChanges() throws InterruptedException {
+        gradebook.addStudent("Ann");
+        gradebook.addGrade("Ann", 65);
+        gradebook.addStudent("Ben");
+        gradebook.addGrade("Ben", 85);
+        gradebook.addStudent("Cal");
+
+        var received = new LinkedBlockingQueue<WatchAlert>();
+        try (var alerts = AlertDispatcher.start(received::add, 16)) {
+            gradebook.setAlertDispatcher(alerts);
+            assertTrue(gradebook.addWatch(GradeWatch.letterBelow("at-risk", "C")));
+            assertFalse(gradebook.addWatch(GradeWatch.averageBelow("at-risk", 50)));
+            assertTrue(gradebook.addWatch(GradeWatch.averageBelow("failing", 60)));
+            assertEquals(Optional.of(List.of("Ann")), gradebook.watchedStudents("at-risk"));
+            assertEquals(Optional.of(List.of()), gradebook.watchedStudents("failing"));
+            assertTrue(gradebook.watchedStudents("missing").isEmpty());
+
+            gradebook.addGrade("Ben", 40);
+            assertEquals(new WatchAlert("at-risk", "Ben", true, 62.5), received.poll(5, TimeUnit.SECONDS));
+            assertEquals(List.of("Ann", "Ben"), gradebook.watchedStudents("at-risk").get());
+
+            gradebook.undo();
+            assertEquals(new WatchAlert("at-risk", "Ben", false, 85.0), received.poll(5, TimeUnit.SECONDS));
+            gradebook.addGrade("Cal", 30);
+            assertEquals(new WatchAlert("at-risk", "Cal", true, 30.0), received.poll(5, TimeUnit.SECONDS));
+            assertEquals(new WatchAlert("failing", "Cal", true, 30.0), received.poll(5, TimeUnit.SECONDS));
+
+            gradebook.curve(1.0, 10.0);
+            assertEquals(new WatchAlert("at-risk", "Ann", false, 75.0), received.poll(5, TimeUnit.SECONDS));
+            assertEquals(List.of("Cal"), gradebook.watchedStudents("at-risk").get());
+            gradebook.setGradingScheme(GradingScheme.parse("A>=95 B>=85 C>=78 F>=0"));
+            assertEquals(new WatchAlert("at-risk", "Ann", true, 75.0), received.poll(5, TimeUnit.SECONDS));
+
+            gradebook.removeStudent("Cal");
+            assertEquals(List.of("Ann"), gradebook.watchedStudents("at-risk").get());
+            assertEquals(List.of(), gradebook.watchedStudents("failing").get());
+            assertTrue(gradebook.removeWatch("failing"));
+            assertEquals(List.of("at-risk"), gradebook.watches().stream().map(GradeWatch::name).toList());
+            assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+            assertEquals(0, alerts.droppedAlerts());
+        }
+
+        var release = new CountDownLatch(1);
+        var delivered = new LinkedBlockingQueue<WatchAlert>();
+        var slow = AlertDispatcher.start(alert -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.add(alert);
+        }, 2);
+        gradebook.setAlertDispatcher(slow);
+        for (int i = 0; i < 10; i++) {
+            gradebook.addGrade("Ben", 0);
+            gradebook.undo();
+        }
+        assertTrue(slow.droppedAlerts() >= 17, "dropped " + slow.droppedAlerts());
+        release.countDown();
+        slow.close();
+        assertEquals(20, delivered.size() + slow.droppedAlerts());
+        gradebook.addGrade("Ben", 0);
+        assertEquals(21, delivered.size() + slow.droppedAlerts());
+    }
+
+    @Test
+    public void testArchiveTermFreezesStudentsAndStartsEmptyTerm() throws InterruptedException {
+        for (var book : List.of(gradebook, new Gradebook(GradeStorage.OFF_HEAP))) {
+            book.setGradingScheme(GradingScheme.parse("homework=40 exams=60"));
+            for (int s = 0; s < 2000; s++) {
+                book.addStudent("Student" + s);
+                book.addGrade("Student" + s, "homework", s % 101);
+                book.addGrade("Student" + s, "exams", (s * 7) % 101);
+            }
+            book.curve(1.0, 3.0);
+            book.compactIdleStudents(Duration.ZERO);
+            book.addGrade("Student5", "exams", 100);
+            var summary = new StudentSummary();
+            book.summarize("Student5", summary);
+            var expectedAverage = book.averageFor("Student5");
+            var expectedLetter = book.letterGradeFor("Student5");
+            var expectedGrades = List.copyOf(book.findStudentGrades("Student5").get());
+            var expectedClassAverage = book.classAverage();
+
+            assertTrue(book.archiveTerm("Fall"));
+            assertFalse(book.archiveTerm("Fall"));
+            assertThrows(IllegalArgumentException.class, () -> book.archiveTerm(" "));
+            assertTrue(book.findStudentGrades("Student5").isEmpty());
+            assertTrue(book.classAverage().isEmpty());
+            assertFalse(book.undo());
+            assertEquals(List.of("Archived term Fall with 2000 students"), book.recentLog(5));
+            assertEquals(1.0, book.curveScale());
+            assertEquals(0.0, book.curveOffset());
+            assertEquals(0, book.sketch().gradeCount());
+            assertEquals(GradingScheme.parse("homework=40 exams=60"), book.gradingScheme());
+            assertTrue(book.addStudent("Student5"));
+            assertTrue(book.addGrade("Student5", "exams", 10));
+
+            var fall = book.archivedTerm("Fall").get();
+            assertEquals(List.of(fall), book.archivedTerms());
+            for (int pass = 0; pass < 2; pass++) {
+                assertEquals("Fall", fall.name());
+                assertEquals(2000, fall.studentCount());
+                assertEquals(expectedGrades, fall.findStudentGrades("Student5").get());
+                assertEquals(expectedAverage, fall.averageFor("Student5"));
+                assertEquals(expectedLetter, fall.letterGradeFor("Student5"));
+                assertEquals(expectedClassAverage.get(), fall.classAverage().get(), 1e-9);
+                assertTrue(fall.findStudentGrades("Nobody").isEmpty());
+                var archived = new StudentSummary();
+                assertTrue(fall.summarize("Student5", archived));
+                assertEquals(summary.average(), archived.average());
+                assertEquals(summary.letterGrade(), archived.letterGrade());
+                assertEquals(4001, fall.sketch().gradeCount());
+                assertTrue(fall.awaitCompaction(Duration.ofSeconds(10)));
+                assertTrue(fall.isCompacted());
+            }
+            assertThrows(UnsupportedOperationException.class, () -> fall.findStudentGrades("Student5").get().add(1));
+            assertEquals(List.of(10), book.findStudentGrades("Student5").get());
+        }
+    }
+
+    @Test
+    public void testMemoryAccountingFollowsChangesAndUndo() {
+        var empty = gradebook.memoryReport();
+        assertEquals(0, empty.studentBytes());
+        assertEquals(Long.MAX_VALUE, empty.budget());
+
+        gradebook.addStudent("Ann");
+        var withAnn = gradebook.memoryReport();
+        assertEquals(1, withAnn.students());
+        assertTrue(withAnn.studentBytes() > 0);
+        assertEquals(0, withAnn.undoEntries());
+        assertEquals(1, withAnn.logEntries());
+        for (int i = 0; i < 50; i++) {
+            gradebook.addGrade("Ann", "exams", i);
+        }
+        var graded = gradebook.memoryReport();
+        assertTrue(graded.studentBytes() > withAnn.studentBytes());
+        for (int i = 0; i < 50; i++) {
+            gradebook.undo();
+        }
+        assertTrue(gradebook.memoryReport().studentBytes() < graded.studentBytes());
+        assertEquals(withAnn.undoBytes(), gradebook.memoryReport().undoBytes());
+        for (int i = 0; i < 50; i++) {
+            gradebook.addGrade("Ann", "exams", i);
+        }
+        assertEquals(graded.studentBytes(), gradebook.memoryReport().studentBytes());
+        assertEquals(graded.undoBytes(), gradebook.memoryReport().undoBytes());
+
+        var before = gradebook.memoryReport();
+        gradebook.removeStudent("Ann");
+        var removed = gradebook.memoryReport();
+        assertEquals(0, removed.studentBytes());
+        assertTrue(removed.undoBytes() - before.undoBytes() > before.studentBytes() / 2,
+                "the undo step keeps the removed student's grades alive");
+        gradebook.undo();
+        assertEquals(before.studentBytes(), gradebook.memoryReport().studentBytes());
+        assertEquals(before.undoBytes(), gradebook.memoryReport().undoBytes());
+
+        gradebook.compactIdleStudents(Duration.ZERO);
+        assertTrue(gradebook.memoryReport().studentBytes() < before.studentBytes());
+        gradebook.addGrade("Ann", "exams", 99);
+        gradebook.undo();
+        assertEquals(before.studentBytes(), gradebook.memoryReport().studentBytes());
+
+        gradebook.archiveTerm("Fall");
+        var fresh = gradebook.memoryReport();
+        assertEquals(0, fresh.studentBytes());
+        assertEquals(0, fresh.undoBytes());
+        assertEquals(1, fresh.logEntries());
+    }
+
+    @Test
+    public void testMemoryBudgetShedsLogAndUndoThenRefusesStudents() {
+        assertThrows(IllegalArgumentException.class, () -> gradebook.setMemoryBudget(0));
+        gradebook.setMemoryBudget(256 * 1024);
+        int added = 0;
+        IllegalStateException refused = null;
+        while (refused == null) {
+            try {
+                gradebook.addStudent("Student" + added);
+                gradebook.addGrade("Student" + added, 90);
+                added++;
+            } catch (IllegalStateException e) {
+                refused = e;
+            }
+        }
+        assertTrue(added > 100, "added " + added);
+        assertTrue(refused.getMessage().contains("Student" + added), refused.getMessage());
+        var memory = gradebook.memoryReport();
+        assertEquals(added, memory.students());
+        assertEquals(10, memory.logEntries());
+        assertEquals(1, memory.undoEntries());
+        assertTrue(memory.trimmedLogEntries() > 0);
+        assertTrue(memory.droppedUndoEntries() > 0);
+        assertEquals(1, memory.rejectedStudents());
+        assertTrue(memory.studentBytes() <= memory.budget());
+
+        assertFalse(gradebook.addStudent("Student0"));
+        assertTrue(gradebook.addGrade("Student0", 80));
+        assertTrue(gradebook.undo());
+        assertFalse(gradebook.undo());
+
+        var tx = gradebook.begin();
+        assertTrue(tx.addStudent("Late"));
+        assertTrue(tx.addGrade("Student1", 70));
+        assertThrows(IllegalStateException.class, tx::commit);
+        assertTrue(gradebook.findStudentGrades("Late").isEmpty());
+        assertEquals(List.of(90), gradebook.findStudentGrades("Student1").get());
+        assertEquals(2, gradebook.memoryReport().rejectedStudents());
+        assertThrows(IllegalStateException.class, () -> gradebook.addStudent("Copied", new ArrayList<>(List.of(80))));
+        assertTrue(gradebook.findStudentGrades("Copied").isEmpty());
+        assertEquals(3, gradebook.memoryReport().rejectedStudents());
+
+        assertTrue(gradebook.removeStudent("Student0"));
+        gradebook.setMemoryBudget(Long.MAX_VALUE);
+        assertTrue(gradebook.addStudent("Late"));
+    }
+
+    @Test
+    public void testBadMemoryBudgetOptionIsReported() throws Exception {
+        for (var option : List.of("--memory-budget=0", "--memory-budget=-5", "--memory-budget=lots",
+                "--memory-budget=" + Long.MAX_VALUE)) {
+            var stdout = System.out;
+            var output = new ByteArrayOutputStream();
+            try {
+                System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+                Main.main(new String[] {option});
+            } finally {
+                System.setOut(stdout);
+            }
+            assertTrue(output.toString(StandardCharsets.UTF_8).startsWith("Unknown option: " + option), option);
+        }
+    }
+
+    @Test
+    public void testRequestIdsApplyMutationsOnce() throws Exception {
+        assertEquals(0, gradebook.memoryReport().dedupeBytes());
+        assertTrue(gradebook.addStudent("Abe", 1L));
+        var memory = gradebook.memoryReport();
+        assertTrue(memory.dedupeBytes() > 3_000_000, "dedupe bytes " + memory.dedupeBytes());
+        assertEquals(memory.studentBytes() + memory.undoBytes() + memory.logBytes() + memory.dedupeBytes(),
+                memory.totalBytes());
+        assertTrue(gradebook.addStudent("Abe", 1L));
+        assertFalse(gradebook.addStudent("Abe", 2L));
+        assertTrue(gradebook.addGrade("Abe", "default", 90, 3L));
+        assertTrue(gradebook.addGrade("Abe", "default", 90, 3L));
+        assertEquals(List.of(90), gradebook.findStudentGrades("Abe").orElseThrow());
+        assertEquals(2, gradebook.duplicateRequests());
+
+        assertThrows(IllegalArgumentException.class, () -> gradebook.addGrade("Abe", "default", 101, 4L));
+        assertTrue(gradebook.addGrade("Abe", "default", 70, 4L));
+        assertEquals(List.of(90, 70), gradebook.findStudentGrades("Abe").orElseThrow());
+
+        gradebook.setDedupeWindow(2, Duration.ofMinutes(1));
+        assertTrue(gradebook.memoryReport().dedupeBytes() < 1024);
+        assertTrue(gradebook.addGrade("Abe", "default", 80, 5L));
+        assertTrue(gradebook.addGrade("Abe", "default", 80, 6L));
+        assertTrue(gradebook.addGrade("Abe", "default", 80, 7L));
+        assertTrue(gradebook.addGrade("Abe", "default", 80, 6L));
+        assertTrue(gradebook.addGrade("Abe", "default", 80, 5L));
+        assertEquals(List.of(90, 70, 80, 80, 80, 80), gradebook.findStudentGrades("Abe").orElseThrow());
+
+        gradebook.setDedupeWindow(16, Duration.ofMillis(20));
+        assertTrue(gradebook.removeStudent("Abe", 8L));
+        assertTrue(gradebook.removeStudent("Abe", 8L));
+        assertTrue(gradebook.addStudent("Abe"));
+        Thread.sleep(40);
+        assertTrue(gradebook.removeStudent("Abe", 8L));
+        assertTrue(gradebook.findStudentGrades("Abe").isEmpty());
+
+        var requests = ByteBuffer.allocate(256);
+        BinaryProtocol.encodeName(requests, BinaryProtocol.ADD_STUDENT, "Bea");
+        BinaryProtocol.encodeAddGrade(requests, 0, 85, 9L);
+        BinaryProtocol.encodeAddGrade(requests, 0, 85, 9L);
+        requests.flip();
+        var out = new ByteArrayOutputStream();
+        new BinaryProtocol(gradebook).serve(Channels.newChannel(
+                new ByteArrayInputStream(requests.array(), 0, requests.limit())), Channels.newChannel(out));
+        var responses = ByteBuffer.wrap(out.toByteArray());
+        BinaryProtocol.readVarint(responses);
+        assertEquals(BinaryProtocol.OK, responses.get());
+        assertEquals(0, BinaryProtocol.readVarint(responses));
+        for (int i = 0; i < 2; i++) {
+            BinaryProtocol.readVarint(responses);
+            assertEquals(BinaryProtocol.OK, responses.get());
+        }
+        assertEquals(List.of(85), gradebook.findStudentGrades("Bea").orElseThrow());
+    }
+
+    /**
+     * Runs Main with options that make it stop before reading any command, and returns what it printed.
+     */
+    private static String runMain(String... args) throws Exception {
+        var stdout = System.out;
+        var output = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+            Main.main(args);
+        } finally {
+            System.setOut(stdout);
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String runCli(Main app, String commands) {
+        var stdin = System.in;
+        var stdout = System.out;
+        var output = new ByteArrayOutputStream();
+        try {
+            System.setIn(new ByteArrayInputStream(commands.getBytes(StandardCharsets.UTF_8)));
+            System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+            app.run();
+        } finally {
+            System.setIn(stdin);
+            System.setOut(stdout);
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,49 @@
+package edu.course.gradebook;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+public class GradeKernelsTest {
+
+    @Test
+    public void testVectorKernelsMatchScalarKernels() {
+        assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+        var scalar = new ScalarGradeKernels();
+        var vector = new VectorGradeKernels();
+        var random = new Random(32);
+        var scalarTotal = new int[GradeKernels.HISTOGRAM_LENGTH];
+        var vectorTotal = new int[GradeKernels.HISTOGRAM_LENGTH];
+        for (int round = 0; round < 200; round++) {
+            var counts = new int[GradeKernels.HISTOGRAM_LENGTH];
+            for (int grade = 0; grade < counts.length; grade++) {
+                counts[grade] = random.nextInt(4) == 0 ? 0 : random.nextInt(100_000);
+            }
+            // An offset view of a larger array, and a direct buffer like an off-heap student's
+            var padded = new int[counts.length + 7];
+            System.arraycopy(counts, 0, padded, 3, counts.length);
+            var heap = IntBuffer.wrap(padded, 3, counts.length).slice();
+            var direct = ByteBuffer.allocateDirect(4 * counts.length).asIntBuffer().put(counts).clear();
+            for (var histogram : new IntBuffer[] {heap, direct}) {
+                scalar.accumulate(scalarTotal, histogram);
+                vector.accumulate(vectorTotal, histogram);
+                assertArrayEquals(scalarTotal, vectorTotal);
+            }
+
+            var scalarMoments = new double[3];
+            var vectorMoments = new double[3];
+            scalar.moments(scalarTotal, scalarMoments);
+            vector.moments(vectorTotal, vectorMoments);
+            assertArrayEquals(scalarMoments, vectorMoments);
+            if (round % 50 == 49) {
+                Arrays.fill(scalarTotal, 0);
+                Arrays.fill(vectorTotal, 0);
+            }
+        }
+    }
+}